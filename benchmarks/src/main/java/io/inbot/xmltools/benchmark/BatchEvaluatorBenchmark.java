@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+import io.inbot.xmltools.BatchEvaluator;
+import io.inbot.xmltools.BatchResult;
+import io.inbot.xmltools.PooledXmlParser;
+import io.inbot.xmltools.XPathBrowser;
+import io.inbot.xmltools.XPathExpressionCache;
+import io.inbot.xmltools.XpathBrowserFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Evaluates the same expressions over a batch of small documents, one browser at a time versus with a {@link BatchEvaluator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchEvaluatorBenchmark {
+
+    private static final String[] EXPRESSIONS = { "/feed/item/name", "/feed/item/price", "/feed/item/stock", "/feed/item/@id",
+            "/feed/item/@type" };
+
+    @Param({ "1000" })
+    public int documents;
+
+    private XpathBrowserFactory factory;
+    private BatchEvaluator evaluator;
+    private List<String> batch;
+
+    @Setup
+    public void setup() {
+        factory = new XpathBrowserFactory(new PooledXmlParser(64, 10), new XPathExpressionCache(64, 10, 1000, 10));
+        evaluator = factory.batchEvaluator(EXPRESSIONS);
+        batch = new ArrayList<>();
+        String document = TestDocuments.feed(1);
+        for (int i = 0; i < documents; i++) {
+            batch.add(document);
+        }
+    }
+
+    @Benchmark
+    public void browsers(Blackhole blackhole) {
+        for (String document : batch) {
+            XPathBrowser browser = factory.browse(document);
+            for (String expression : EXPRESSIONS) {
+                blackhole.consume(browser.getString(expression));
+            }
+        }
+    }
+
+    @Benchmark
+    public BatchResult batch() {
+        return evaluator.evaluate(batch);
+    }
+}
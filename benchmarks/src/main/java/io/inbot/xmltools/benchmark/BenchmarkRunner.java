@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all (or the matching) benchmarks once per thread count with the gc profiler enabled so allocation rates are reported next to
+ * the throughput numbers.
+ *
+ * Usage: <code>java -jar target/benchmarks.jar [-Dthreads=1,4,16] [regular jmh options]</code>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        List<Integer> threadCounts = new ArrayList<>();
+        for (String t : System.getProperty("threads", "1,4,16").split(",")) {
+            threadCounts.add(Integer.valueOf(t.trim()));
+        }
+        for (int threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .threads(threads)
+                .addProfiler(GCProfiler.class);
+            if (commandLineOptions.getIncludes().isEmpty()) {
+                options.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+            }
+            if (!commandLineOptions.getResult().hasValue()) {
+                options.result("jmh-result-" + threads + "-threads.json");
+                options.resultFormat(ResultFormatType.JSON);
+            }
+            System.out.println("Running benchmarks with " + threads + " threads " + Arrays.toString(args));
+            new Runner(options.build()).run();
+        }
+    }
+}
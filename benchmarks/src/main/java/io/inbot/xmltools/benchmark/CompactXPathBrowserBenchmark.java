@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+import io.inbot.xmltools.CompactDocument;
+import io.inbot.xmltools.CompactXPathBrowser;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Same operations as {@link XPathBrowserBenchmark} on a {@link CompactDocument}, plus building the document. Compact documents are
+ * immutable, so all threads share one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactXPathBrowserBenchmark {
+
+    @Param({ "10", "1000" })
+    public int items;
+
+    private String xml;
+    private CompactXPathBrowser browser;
+
+    @Setup
+    public void setup() {
+        xml = TestDocuments.feed(items);
+        browser = CompactDocument.parse(xml).browse();
+    }
+
+    @Benchmark
+    public CompactDocument parse() {
+        return CompactDocument.parse(xml);
+    }
+
+    @Benchmark
+    public Optional<String> getString() {
+        return browser.getString("/feed/item[1]/name");
+    }
+
+    @Benchmark
+    public Optional<Double> getDouble() {
+        return browser.getDouble("/feed/item[1]/price");
+    }
+
+    @Benchmark
+    public String[] getStringValues() {
+        return browser.getStringValues("/feed/item/name");
+    }
+
+    @Benchmark
+    public void streamMatchingFields(Blackhole blackhole) {
+        browser.streamMatching("/feed/item").forEach(item -> {
+            blackhole.consume(item.getString("name"));
+            blackhole.consume(item.getDouble("price"));
+            blackhole.consume(item.getLong("stock"));
+            blackhole.consume(item.getNodeAttribute("id"));
+        });
+    }
+}
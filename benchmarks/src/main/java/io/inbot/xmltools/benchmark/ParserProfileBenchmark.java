@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+import io.inbot.xmltools.ParserProfile;
+import io.inbot.xmltools.PooledXmlParser;
+import io.inbot.xmltools.XPathBrowser;
+import io.inbot.xmltools.XPathExpressionCache;
+import io.inbot.xmltools.XpathBrowserFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Compares the parser profiles for parsing only, reading a single field and reading the whole document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserProfileBenchmark {
+
+    @Param({ "DEFAULT", "FAST_UNTRUSTED", "FAST_TRUSTED", "LOW_MEMORY" })
+    public ParserProfile profile;
+
+    @Param({ "10", "1000" })
+    public int items;
+
+    private PooledXmlParser parser;
+    private XpathBrowserFactory xpbf;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        parser = new PooledXmlParser(64, profile);
+        xpbf = new XpathBrowserFactory(parser, new XPathExpressionCache(64, 10000, 1000, 20));
+        bytes = TestDocuments.feed(items).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Document parse() {
+        return parser.parseXml(bytes);
+    }
+
+    @Benchmark
+    public String parseAndReadFirstField() {
+        return xpbf.browse(parser.parseXml(bytes)).getString("/feed/item/name").orElse(null);
+    }
+
+    @Benchmark
+    public XPathBrowser parseAndReadEverything() {
+        // freezing visits every node
+        return xpbf.browse(parser.parseXml(bytes)).freeze();
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+import io.inbot.xmltools.PooledXmlParser;
+import io.inbot.xmltools.StreamingXPathEvaluator;
+import io.inbot.xmltools.StreamingXPathResult;
+import io.inbot.xmltools.XPathBrowser;
+import io.inbot.xmltools.XPathExpressionCache;
+import io.inbot.xmltools.XpathBrowserFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extracting the same fields with the streaming evaluator versus parsing to DOM and using xpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamingXPathEvaluatorBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int items;
+
+    private byte[] bytes;
+    private StreamingXPathEvaluator evaluator;
+    private XpathBrowserFactory factory;
+
+    @Setup
+    public void setup() {
+        bytes = TestDocuments.feed(items).getBytes(StandardCharsets.UTF_8);
+        evaluator = new StreamingXPathEvaluator("/feed/item/name", "/feed/item/@id", "/feed/item[@type='odd']/price");
+        factory = new XpathBrowserFactory(new PooledXmlParser(64, 10), new XPathExpressionCache(1000, 10, 64));
+    }
+
+    @Benchmark
+    public String[] streaming() {
+        StreamingXPathResult result = evaluator.evaluate(new ByteArrayInputStream(bytes));
+        result.getStringValues("/feed/item/@id");
+        result.getStringValues("/feed/item[@type='odd']/price");
+        return result.getStringValues("/feed/item/name");
+    }
+
+    @Benchmark
+    public String[] dom() {
+        XPathBrowser browser = factory.browse(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8);
+        browser.getStringValues("/feed/item/@id");
+        browser.getStringValues("/feed/item[@type='odd']/price");
+        return browser.getStringValues("/feed/item/name");
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+/**
+ * Generates the synthetic feed style documents used by the benchmarks. Documents look like
+ * <code>&lt;feed&gt;&lt;item id=".."&gt;...&lt;/item&gt;...&lt;/feed&gt;</code> with a handful of typed fields per item.
+ */
+public final class TestDocuments {
+
+    private TestDocuments() {
+    }
+
+    /**
+     * @param items number of item elements in the feed
+     * @return an xml document with the specified number of items
+     */
+    public static String feed(int items) {
+        StringBuilder buf = new StringBuilder(items * 200 + 64);
+        buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<feed>\n");
+        for (int i = 0; i < items; i++) {
+            buf.append("  <item id=\"").append(i).append("\" type=\"").append(i % 2 == 0 ? "even" : "odd").append("\">\n");
+            buf.append("    <name>Item number ").append(i).append("</name>\n");
+            buf.append("    <price>").append(i).append('.').append(i % 100).append("</price>\n");
+            buf.append("    <stock>").append(i * 7).append("</stock>\n");
+            buf.append("    <available>").append(i % 3 != 0).append("</available>\n");
+            buf.append("    <description>Some text with unicode \u00e9\u00e8\u00ea and a supplementary character \uD83D\uDE00</description>\n");
+            buf.append("  </item>\n");
+        }
+        buf.append("</feed>\n");
+        return buf.toString();
+    }
+
+    /**
+     * @param items number of item elements in the feed
+     * @return a feed with control characters sprinkled in that are not allowed in xml
+     */
+    public static String dirtyFeed(int items) {
+        String feed = feed(items);
+        StringBuilder buf = new StringBuilder(feed.length() + feed.length() / 50);
+        for (int i = 0; i < feed.length(); i++) {
+            char c = feed.charAt(i);
+            buf.append(c);
+            if (c == '>' && i % 7 == 0) {
+                buf.append((char) 0x1a);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @param count number of distinct expressions
+     * @return distinct, valid xpath expressions against the feed documents
+     */
+    public static String[] expressions(int count) {
+        String[] fields = { "name", "price", "stock", "available", "description", "@id", "@type" };
+        String[] expressions = new String[count];
+        for (int i = 0; i < count; i++) {
+            expressions[i] = "/feed/item[" + (i / fields.length + 1) + "]/" + fields[i % fields.length];
+        }
+        return expressions;
+    }
+}
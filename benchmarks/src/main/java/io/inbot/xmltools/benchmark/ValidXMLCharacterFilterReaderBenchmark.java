@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+import io.inbot.xmltools.ValidXMLCharacterFilterInputStream;
+import io.inbot.xmltools.ValidXMLCharacterFilterReader;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidXMLCharacterFilterReaderBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int items;
+
+    private String xml;
+    private byte[] bytes;
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        final char[] chars = new char[8192];
+        final byte[] bytes = new byte[8192];
+    }
+
+    @Setup
+    public void setup() {
+        xml = TestDocuments.dirtyFeed(items);
+        bytes = xml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long filterBufferedReader(Buffer buffer) throws IOException {
+        long total = 0;
+        try (ValidXMLCharacterFilterReader reader = new ValidXMLCharacterFilterReader(new BufferedReader(new StringReader(xml)))) {
+            int read;
+            while ((read = reader.read(buffer.chars, 0, buffer.chars.length)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long filterUtf8InputStream(Buffer buffer) throws IOException {
+        long total = 0;
+        try (ValidXMLCharacterFilterInputStream in = new ValidXMLCharacterFilterInputStream(new ByteArrayInputStream(bytes))) {
+            int read;
+            while ((read = in.read(buffer.bytes, 0, buffer.bytes.length)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+}
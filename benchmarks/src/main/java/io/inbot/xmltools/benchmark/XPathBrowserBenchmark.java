@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+import io.inbot.xmltools.PooledXmlParser;
+import io.inbot.xmltools.XPathBrowser;
+import io.inbot.xmltools.XPathExpressionCache;
+import io.inbot.xmltools.XpathBrowserFactory;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the typed getters and streaming methods of {@link XPathBrowser} against an already parsed document. DOM is not thread safe,
+ * so each benchmark thread gets its own document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XPathBrowserBenchmark {
+
+    @Param({ "10", "1000" })
+    public int items;
+
+    private XPathBrowser browser;
+
+    @Setup
+    public void setup() {
+        XpathBrowserFactory factory = new XpathBrowserFactory(new PooledXmlParser(64, 10), new XPathExpressionCache(64, 10, 1000, 10));
+        browser = factory.browse(TestDocuments.feed(items));
+    }
+
+    @Benchmark
+    public Optional<String> getString() {
+        return browser.getString("/feed/item[1]/name");
+    }
+
+    @Benchmark
+    public Optional<Integer> getInt() {
+        return browser.getInt("/feed/item[1]/stock");
+    }
+
+    @Benchmark
+    public Optional<Double> getDouble() {
+        return browser.getDouble("/feed/item[1]/price");
+    }
+
+    @Benchmark
+    public double getDoublePrimitive() {
+        return browser.getDouble("/feed/item[1]/price", Double.NaN);
+    }
+
+    @Benchmark
+    public double[] getDoubleValues() {
+        return browser.getDoubleValues("/feed/item/price", Double.NaN);
+    }
+
+    @Benchmark
+    public String[] getStringValues() {
+        return browser.getStringValues("/feed/item/name");
+    }
+
+    @Benchmark
+    public long streamMatchingCount() {
+        return browser.streamMatching("/feed/item").count();
+    }
+
+    @Benchmark
+    public void streamMatchingFields(Blackhole blackhole) {
+        browser.streamMatching("/feed/item").forEach(item -> {
+            blackhole.consume(item.getString("name"));
+            blackhole.consume(item.getDouble("price"));
+            blackhole.consume(item.getLong("stock"));
+            blackhole.consume(item.getNodeAttribute("id"));
+        });
+    }
+
+    @Benchmark
+    public List<String[]> queryRows() {
+        return browser.query("/feed/item").field("name").field("price").field("stock").field("@id").rows();
+    }
+
+    @Benchmark
+    public void streamMatchingPrimitiveFields(Blackhole blackhole) {
+        browser.streamMatching("/feed/item").forEach(item -> {
+            blackhole.consume(item.getDouble("price", Double.NaN));
+            blackhole.consume(item.getLong("stock", -1));
+            blackhole.consume(item.getLong("@id", -1));
+        });
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools.benchmark;
+
+import io.inbot.xmltools.CompiledXPath;
+import io.inbot.xmltools.PooledXmlParser;
+import io.inbot.xmltools.XPathExpressionCache;
+import java.util.concurrent.TimeUnit;
+import javax.xml.xpath.XPathConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XPathExpressionCacheBenchmark {
+
+    @Param({ "1", "100", "1000" })
+    public int expressionCount;
+
+    private XPathExpressionCache cache;
+    private String[] expressions;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        // DOM is not thread safe, so each thread gets its own small document;
+        // this is about the cache and not about xpath evaluation
+        Document document;
+
+        @Setup
+        public void setup() {
+            document = new PooledXmlParser(1, 10).parseXml(TestDocuments.feed(1));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        cache = new XPathExpressionCache(10000, 10, 64);
+        expressions = TestDocuments.expressions(expressionCount);
+        for (String expression : expressions) {
+            cache.get(expression);
+        }
+    }
+
+    @Benchmark
+    public CompiledXPath get(Cursor cursor) {
+        String expression = expressions[cursor.next++ % expressions.length];
+        return cache.get(expression);
+    }
+
+    @Benchmark
+    public Object getAndEvaluate(Cursor cursor) {
+        String expression = expressions[cursor.next++ % expressions.length];
+        return cache.get(expression).evaluate(cursor.document, XPathConstants.STRING);
+    }
+}
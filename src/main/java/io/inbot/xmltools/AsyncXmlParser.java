@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.w3c.dom.Document;
+
+/**
+ * Parses documents on an executor and returns futures, so that e.g. a non blocking http service can offload parsing without blocking its
+ * own threads.
+ *
+ * Admission control keeps a burst of large documents from exhausting the heap: at most maxBytesInFlight bytes of input are parsed at the
+ * same time (the DOMs take several times that). Requests that don't fit wait in a bounded first in first out queue without blocking the
+ * caller; when the queue is full, the returned future fails with a {@link RejectedExecutionException}. A document that is larger than
+ * maxBytesInFlight is parsed on its own.
+ *
+ * Create instances with {@link XpathBrowserFactory#async()} or {@link XpathBrowserFactory#async(Executor, long, int)}.
+ */
+public class AsyncXmlParser {
+    private final PooledXmlParser parser;
+    private final XPathExpressionCache expressionCache;
+    private final Executor executor;
+    private final long maxBytesInFlight;
+    private final int maxQueued;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+    private long bytesInFlight = 0;
+
+    AsyncXmlParser(PooledXmlParser parser, XPathExpressionCache expressionCache, Executor executor, long maxBytesInFlight, int maxQueued) {
+        if (maxBytesInFlight <= 0) {
+            throw new IllegalArgumentException("maxBytesInFlight should be positive");
+        }
+        this.parser = parser;
+        this.expressionCache = expressionCache;
+        this.executor = executor;
+        this.maxBytesInFlight = maxBytesInFlight;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * @return shared pool with a daemon thread per processor that is used when no executor is specified. On a jvm with virtual threads,
+     *         you may want to pass a virtual thread executor instead; admission control still bounds the memory use.
+     */
+    static Executor defaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    public CompletableFuture<Document> parseXml(byte[] xml) {
+        return submit(xml.length, () -> parser.parseXml(xml));
+    }
+
+    /**
+     * @param xml xml; the buffer should not be modified until the future completes
+     * @return future document
+     */
+    public CompletableFuture<Document> parseXml(ByteBuffer xml) {
+        return submit(xml.remaining(), () -> parser.parseXml(xml));
+    }
+
+    public CompletableFuture<Document> parseXml(String xml) {
+        return submit(2L * xml.length(), () -> parser.parseXml(xml));
+    }
+
+    public CompletableFuture<Document> parseXml(Path file) {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            CompletableFuture<Document> failed = new CompletableFuture<>();
+            failed.completeExceptionally(RethrownException.rethrow(e));
+            return failed;
+        }
+        return submit(size, () -> parser.parseXml(file));
+    }
+
+    public CompletableFuture<XPathBrowser> browse(byte[] xml) {
+        return parseXml(xml).thenApply(this::browser);
+    }
+
+    public CompletableFuture<XPathBrowser> browse(ByteBuffer xml) {
+        return parseXml(xml).thenApply(this::browser);
+    }
+
+    public CompletableFuture<XPathBrowser> browse(String xml) {
+        return parseXml(xml).thenApply(this::browser);
+    }
+
+    public CompletableFuture<XPathBrowser> browse(Path file) {
+        return parseXml(file).thenApply(this::browser);
+    }
+
+    /**
+     * @return bytes of input of the documents that are being parsed right now
+     */
+    public long bytesInFlight() {
+        synchronized (lock) {
+            return bytesInFlight;
+        }
+    }
+
+    /**
+     * @return number of requests waiting for admission
+     */
+    public int queued() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private XPathBrowser browser(Document document) {
+        return new XPathBrowser(expressionCache, document);
+    }
+
+    private <T> CompletableFuture<T> submit(long bytes, Callable<T> callable) {
+        Task<T> task = new Task<>(Math.min(bytes, maxBytesInFlight), callable);
+        boolean admitted = false;
+        synchronized (lock) {
+            if (queue.isEmpty() && bytesInFlight + task.bytes <= maxBytesInFlight) {
+                bytesInFlight += task.bytes;
+                admitted = true;
+            } else if (queue.size() < maxQueued) {
+                queue.add(task);
+            } else {
+                task.future.completeExceptionally(new RejectedExecutionException("too many documents waiting to be parsed: " + queue.size()));
+            }
+        }
+        if (admitted) {
+            start(task);
+        }
+        return task.future;
+    }
+
+    private void start(Task<?> task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(e);
+            release(task.bytes);
+        }
+    }
+
+    private void release(long bytes) {
+        List<Task<?>> admitted = new ArrayList<>();
+        synchronized (lock) {
+            bytesInFlight -= bytes;
+            while (!queue.isEmpty() && bytesInFlight + queue.peek().bytes <= maxBytesInFlight) {
+                Task<?> task = queue.poll();
+                bytesInFlight += task.bytes;
+                admitted.add(task);
+            }
+        }
+        for (Task<?> task : admitted) {
+            start(task);
+        }
+    }
+
+    private final class Task<T> implements Runnable {
+        private final long bytes;
+        private final Callable<T> callable;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task(long bytes, Callable<T> callable) {
+            this.bytes = bytes;
+            this.callable = callable;
+        }
+
+        @Override
+        public void run() {
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = callable.call();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            // release before completing; dependent stages run inside complete() and should not hold on to the budget
+            release(bytes);
+            if (failure == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static final class DefaultExecutorHolder {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "xmltools-parser-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
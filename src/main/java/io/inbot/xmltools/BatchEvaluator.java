@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.xpath.XPathConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Evaluates a fixed set of expressions over batches of (small) documents. Get instances from
+ * {@link XpathBrowserFactory#batchEvaluator(String...)}.
+ *
+ * The expressions are compiled and looked up once when the evaluator is created instead of for every call, and all documents in a batch
+ * are parsed with a single borrowed document builder. The result is column oriented: one array of values per expression, see
+ * {@link BatchResult}.
+ *
+ * Instances are thread safe and can be reused for any number of batches.
+ */
+public class BatchEvaluator {
+
+    private final PooledXmlParser parser;
+    private final List<String> expressions;
+    private final CompiledXPath[] compiled;
+
+    BatchEvaluator(PooledXmlParser parser, XPathExpressionCache cache, String... expressions) {
+        this.parser = parser;
+        this.expressions = Collections.unmodifiableList(Arrays.asList(expressions.clone()));
+        compiled = new CompiledXPath[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            compiled[i] = cache.get(expressions[i]);
+        }
+    }
+
+    /**
+     * @return the expressions, in column order
+     */
+    public List<String> expressions() {
+        return expressions;
+    }
+
+    /**
+     * @param documents xml documents
+     * @return one column per expression with a row per document
+     * @throws io.inbot.xmltools.exceptions.RethrownException if any of the documents cannot be parsed
+     */
+    public BatchResult evaluate(List<String> documents) {
+        return evaluate(documents, xml -> new InputSource(new StringReader(xml)), xml -> -1L);
+    }
+
+    /**
+     * @param documents xml documents as bytes; the parser detects the encoding of each document
+     * @return one column per expression with a row per document
+     * @throws io.inbot.xmltools.exceptions.RethrownException if any of the documents cannot be parsed
+     */
+    public BatchResult evaluateBytes(List<byte[]> documents) {
+        return evaluate(documents, bytes -> new InputSource(new ByteArrayInputStream(bytes)), bytes -> (long) bytes.length);
+    }
+
+    /**
+     * @param documents the documents; you can also evaluate already parsed documents, see {@link #evaluateDocuments(List)}
+     * @param toInputSource conversion to an input source for the parser
+     * @param <T> type of the documents
+     * @return one column per expression with a row per document
+     * @throws io.inbot.xmltools.exceptions.RethrownException if any of the documents cannot be parsed
+     */
+    public <T> BatchResult evaluate(List<T> documents, Function<T, InputSource> toInputSource) {
+        return evaluate(documents, toInputSource, document -> -1L);
+    }
+
+    private <T> BatchResult evaluate(List<T> documents, Function<T, InputSource> toInputSource, Function<T, Long> size) {
+        String[][] columns = new String[compiled.length][documents.size()];
+        DocumentBuilder documentBuilder = parser.borrowDocumentBuilder();
+        try {
+            int row = 0;
+            for (T input : documents) {
+                Document document = parser.parse(documentBuilder, toInputSource.apply(input), size.apply(input));
+                evaluateRow(document, columns, row++);
+            }
+        } finally {
+            parser.returnDocumentBuilder(documentBuilder);
+        }
+        return new BatchResult(expressions, documents.size(), columns);
+    }
+
+    /**
+     * @param documents parsed documents or other nodes
+     * @return one column per expression with a row per document
+     */
+    public BatchResult evaluateDocuments(List<? extends Node> documents) {
+        String[][] columns = new String[compiled.length][documents.size()];
+        int row = 0;
+        for (Node document : documents) {
+            evaluateRow(document, columns, row++);
+        }
+        return new BatchResult(expressions, documents.size(), columns);
+    }
+
+    private void evaluateRow(Node document, String[][] columns, int row) {
+        for (int i = 0; i < compiled.length; i++) {
+            String value = ((String) compiled[i].evaluate(document, XPathConstants.STRING)).trim();
+            columns[i][row] = Numbers.isBlank(value) ? null : value;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.List;
+
+/**
+ * Column oriented result of a {@link BatchEvaluator}: one array per expression with the value for each document in the batch. Values are
+ * trimmed like those of {@link XPathBrowser#getString(String)}; absent and blank values are null.
+ */
+public class BatchResult {
+
+    private final List<String> expressions;
+    private final int size;
+    private final String[][] columns;
+
+    BatchResult(List<String> expressions, int size, String[][] columns) {
+        this.expressions = expressions;
+        this.size = size;
+        this.columns = columns;
+    }
+
+    /**
+     * @return number of documents
+     */
+    public int size() {
+        return size;
+    }
+
+    public List<String> expressions() {
+        return expressions;
+    }
+
+    /**
+     * @param index index of the expression
+     * @return the values of the expression for all documents; do not modify the returned array
+     */
+    public String[] column(int index) {
+        return columns[index];
+    }
+
+    /**
+     * @param expression one of the expressions of the evaluator
+     * @return the values of the expression for all documents; do not modify the returned array
+     * @throws IllegalArgumentException if the expression is not part of the batch
+     */
+    public String[] column(String expression) {
+        return columns[indexOf(expression)];
+    }
+
+    /**
+     * @param expression one of the expressions of the evaluator
+     * @param defaultValue used for absent values
+     * @return the values as longs
+     * @throws NumberFormatException if a value is not a long
+     */
+    public long[] longColumn(String expression, long defaultValue) {
+        String[] column = column(expression);
+        long[] values = new long[column.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = column[i] == null ? defaultValue : Numbers.parseLong(column[i]);
+        }
+        return values;
+    }
+
+    /**
+     * @param expression one of the expressions of the evaluator
+     * @param defaultValue used for absent values, e.g. Double.NaN
+     * @return the values as doubles
+     * @throws NumberFormatException if a value is not a double
+     */
+    public double[] doubleColumn(String expression, double defaultValue) {
+        String[] column = column(expression);
+        double[] values = new double[column.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = column[i] == null ? defaultValue : Numbers.parseDouble(column[i]);
+        }
+        return values;
+    }
+
+    /**
+     * @param row index of the document
+     * @param expression one of the expressions of the evaluator
+     * @return the value or null
+     */
+    public String get(int row, String expression) {
+        return column(expression)[row];
+    }
+
+    private int indexOf(String expression) {
+        int index = expressions.indexOf(expression);
+        if (index < 0) {
+            throw new IllegalArgumentException("not part of the batch: " + expression);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,523 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.SimplePath.AttributePredicate;
+import io.inbot.xmltools.SimplePath.Step;
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Compact, immutable, read only representation of an xml document. Use this instead of a DOM when you need to keep many parsed documents in
+ * memory or when you only ever read documents with simple expressions.
+ *
+ * Elements are numbered in document order and stored in a handful of int arrays: the name, the parent, the end of the subtree and the range
+ * of the text of the subtree in a single character buffer that holds all text of the document. Because a subtree is a contiguous range of
+ * elements and of text, descendant steps and string values need no pointer chasing at all. Names are interned in a small pool and
+ * attribute values are kept in a second character buffer. Comments and processing instructions are dropped.
+ *
+ * Documents are queried with a {@link CompactXPathBrowser}, see {@link #browse()}. Instances are thread safe.
+ */
+public final class CompactDocument {
+
+    /**
+     * Index used for the document node, which is the parent of the root element.
+     */
+    static final int DOCUMENT = -1;
+
+    static final int ANY_NAME = -1;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final String[] names;
+    // pool index of the name without prefix for each name in the pool
+    private final int[] localNames;
+    private final Map<String, Integer> localNameIndex;
+
+    private final int elementCount;
+    private final int[] elementName;
+    private final int[] parent;
+    // exclusive index of the last element in the subtree
+    private final int[] subtreeEnd;
+    private final int[] textStart;
+    private final int[] textEnd;
+    // index of the first text segment at or after the start of the element
+    private final int[] firstSegment;
+    // first attribute of each element; has elementCount + 1 entries
+    private final int[] firstAttribute;
+
+    private final int segmentCount;
+    private final int[] segmentOwner;
+    private final int[] segmentStart;
+    private final int[] segmentEnd;
+
+    private final int[] attributeName;
+    // has attribute count + 1 entries
+    private final int[] attributeValueStart;
+
+    private final String text;
+    private final String attributeValues;
+
+    private CompactDocument(Builder builder) {
+        names = builder.names.toArray(new String[builder.names.size()]);
+        localNames = new int[names.length];
+        localNameIndex = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            String localName = names[i].substring(names[i].indexOf(':') + 1);
+            Integer id = localNameIndex.get(localName);
+            if (id == null) {
+                // the first name with this local name represents all of them
+                id = i;
+                localNameIndex.put(localName, id);
+            }
+            localNames[i] = id;
+        }
+        elementCount = builder.elementCount;
+        elementName = Arrays.copyOf(builder.elementName, elementCount);
+        parent = Arrays.copyOf(builder.parent, elementCount);
+        subtreeEnd = Arrays.copyOf(builder.subtreeEnd, elementCount);
+        textStart = Arrays.copyOf(builder.textStart, elementCount);
+        textEnd = Arrays.copyOf(builder.textEnd, elementCount);
+        firstSegment = Arrays.copyOf(builder.firstSegment, elementCount);
+        firstAttribute = Arrays.copyOf(builder.firstAttribute, elementCount + 1);
+        firstAttribute[elementCount] = builder.attributeCount;
+        segmentCount = builder.segmentCount;
+        segmentOwner = Arrays.copyOf(builder.segmentOwner, segmentCount);
+        segmentStart = Arrays.copyOf(builder.segmentStart, segmentCount);
+        segmentEnd = Arrays.copyOf(builder.segmentEnd, segmentCount);
+        attributeName = Arrays.copyOf(builder.attributeName, builder.attributeCount);
+        attributeValueStart = Arrays.copyOf(builder.attributeValueStart, builder.attributeCount + 1);
+        attributeValueStart[builder.attributeCount] = builder.attributeValues.length();
+        text = builder.text.toString();
+        attributeValues = builder.attributeValues.toString();
+    }
+
+    /**
+     * @param inputStream xml; the encoding is detected from the document
+     * @return the document
+     */
+    public static CompactDocument parse(InputStream inputStream) {
+        return parse(StaxSupport.createReader(inputStream));
+    }
+
+    /**
+     * @param inputStream xml
+     * @param encoding encoding of the bytes
+     * @return the document
+     */
+    public static CompactDocument parse(InputStream inputStream, Charset encoding) {
+        return parse(StaxSupport.createReader(inputStream, encoding.name()));
+    }
+
+    /**
+     * @param reader xml
+     * @return the document
+     */
+    public static CompactDocument parse(Reader reader) {
+        return parse(StaxSupport.createReader(reader));
+    }
+
+    /**
+     * @param xml xml
+     * @return the document
+     */
+    public static CompactDocument parse(String xml) {
+        return parse(new StringReader(xml));
+    }
+
+    private static CompactDocument parse(XMLStreamReader reader) {
+        try {
+            Builder builder = new Builder();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    builder.startElement(reader);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    builder.endElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    builder.text(reader);
+                    break;
+                default:
+                    builder.otherEvent();
+                    break;
+                }
+            }
+            return new CompactDocument(builder);
+        } catch (XMLStreamException e) {
+            throw RethrownException.rethrow(e);
+        } finally {
+            StaxSupport.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * @return browser positioned on the document
+     */
+    public CompactXPathBrowser browse() {
+        return new CompactXPathBrowser(this, DOCUMENT);
+    }
+
+    /**
+     * @return number of elements in the document
+     */
+    public int elementCount() {
+        return elementCount;
+    }
+
+    /**
+     * @return approximate number of bytes used by this document
+     */
+    public long estimatedSizeInBytes() {
+        long size = 16L * 4 + 20L * 4;
+        size += 4L * (6 * elementCount + 3 * segmentCount + 2 * attributeName.length + 2);
+        size += 2L * (text.length() + attributeValues.length());
+        size += 4L * localNames.length;
+        for (String name : names) {
+            size += 48 + 2L * name.length();
+        }
+        return size;
+    }
+
+    String name(int element) {
+        return element == DOCUMENT ? "" : names[elementName[element]];
+    }
+
+    int parent(int element) {
+        return element == DOCUMENT ? DOCUMENT : parent[element];
+    }
+
+    /**
+     * @param localName name without prefix
+     * @return pool index to compare with {@link #localName(int)} or null if no element or attribute in the document has this name
+     */
+    Integer localNameId(String localName) {
+        return localNameIndex.get(localName);
+    }
+
+    int localName(int element) {
+        return localNames[elementName[element]];
+    }
+
+    String stringValue(int element) {
+        if (element == DOCUMENT) {
+            return elementCount == 0 ? "" : stringValue(0);
+        }
+        return text.substring(textStart[element], textEnd[element]);
+    }
+
+    int subtreeEnd(int element) {
+        return element == DOCUMENT ? elementCount : subtreeEnd[element];
+    }
+
+    /**
+     * @return first child element or -1
+     */
+    int firstChild(int element) {
+        int child = element + 1;
+        return child < subtreeEnd(element) ? child : -1;
+    }
+
+    /**
+     * @return next sibling element or -1
+     */
+    int nextSibling(int element) {
+        int next = subtreeEnd[element];
+        return next < subtreeEnd(parent[element]) ? next : -1;
+    }
+
+    /**
+     * @return the values of the text children of the element, adjacent text and CDATA merged
+     */
+    List<String> textChildren(int element) {
+        List<String> result = new ArrayList<>(1);
+        if (element == DOCUMENT) {
+            return result;
+        }
+        int end = subtreeEnd[element] < elementCount ? firstSegment[subtreeEnd[element]] : segmentCount;
+        for (int s = firstSegment[element]; s < end; s++) {
+            if (segmentOwner[s] == element) {
+                result.add(text.substring(segmentStart[s], segmentEnd[s]));
+            }
+        }
+        return result;
+    }
+
+    int attributeCount(int element) {
+        return element == DOCUMENT ? 0 : firstAttribute[element + 1] - firstAttribute[element];
+    }
+
+    String attributeName(int element, int i) {
+        return names[attributeName[firstAttribute[element] + i]];
+    }
+
+    String attributeValue(int element, int i) {
+        int attribute = firstAttribute[element] + i;
+        return attributeValues.substring(attributeValueStart[attribute], attributeValueStart[attribute + 1]);
+    }
+
+    /**
+     * @param element element
+     * @param localNameId pool index of the local name
+     * @return the value of the first attribute with the local name or null
+     */
+    String attribute(int element, int localNameId) {
+        if (element == DOCUMENT) {
+            return null;
+        }
+        for (int a = firstAttribute[element]; a < firstAttribute[element + 1]; a++) {
+            if (localNames[attributeName[a]] == localNameId) {
+                return attributeValues.substring(attributeValueStart[a], attributeValueStart[a + 1]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate the element steps of a path.
+     *
+     * @param context context element or {@link #DOCUMENT}
+     * @param path path
+     * @return matching elements in document order
+     */
+    int[] select(int context, SimplePath path) {
+        int[] nodes = { path.isAbsolute() ? DOCUMENT : context };
+        int count = 1;
+        // once a descendant step has been evaluated, context nodes may be nested in each other
+        boolean nested = false;
+        for (Step step : path.steps()) {
+            nested |= step.descendant;
+            int nameId = ANY_NAME;
+            if (step.name != null) {
+                Integer id = localNameId(step.name);
+                if (id == null) {
+                    return EMPTY;
+                }
+                nameId = id;
+            }
+            int[] matches = new int[Math.max(4, count)];
+            int matchCount = 0;
+            for (int i = 0; i < count; i++) {
+                int node = nodes[i];
+                int end = subtreeEnd(node);
+                if (step.descendant) {
+                    for (int e = node + 1; e < end; e++) {
+                        if (matches(e, step, nameId)) {
+                            matches = add(matches, matchCount++, e);
+                        }
+                    }
+                } else {
+                    int position = 0;
+                    for (int c = node + 1; c < end; c = subtreeEnd[c]) {
+                        if (nameId == ANY_NAME || localName(c) == nameId) {
+                            position++;
+                            if ((step.position == 0 || step.position == position) && attributesMatch(c, step)) {
+                                matches = add(matches, matchCount++, c);
+                            }
+                        }
+                    }
+                }
+            }
+            if (nested && count > 1) {
+                // nested context nodes produce duplicates and out of order results, also for child steps that follow a descendant step
+                Arrays.sort(matches, 0, matchCount);
+                matchCount = dedupe(matches, matchCount);
+            }
+            nodes = matches;
+            count = matchCount;
+            if (count == 0) {
+                return EMPTY;
+            }
+        }
+        return count == nodes.length ? nodes : Arrays.copyOf(nodes, count);
+    }
+
+    private boolean matches(int element, Step step, int nameId) {
+        if (nameId != ANY_NAME && localName(element) != nameId) {
+            return false;
+        }
+        if (step.position > 0) {
+            // position among the siblings that match the name test
+            int p = parent[element];
+            int position = 0;
+            for (int c = p == DOCUMENT ? 0 : p + 1; c <= element; c = subtreeEnd[c]) {
+                if (nameId == ANY_NAME || localName(c) == nameId) {
+                    position++;
+                }
+            }
+            if (position != step.position) {
+                return false;
+            }
+        }
+        return attributesMatch(element, step);
+    }
+
+    private boolean attributesMatch(int element, Step step) {
+        for (AttributePredicate predicate : step.attributePredicates) {
+            Integer id = localNameId(predicate.name);
+            if (id == null || !predicate.matches(attribute(element, id))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] add(int[] array, int index, int value) {
+        int[] result = index < array.length ? array : Arrays.copyOf(array, array.length * 2);
+        result[index] = value;
+        return result;
+    }
+
+    private static int dedupe(int[] sorted, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        int unique = 1;
+        for (int i = 1; i < count; i++) {
+            if (sorted[i] != sorted[unique - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return unique;
+    }
+
+    private static final class Builder {
+        final List<String> names = new ArrayList<>();
+        final Map<String, Integer> nameIndex = new HashMap<>();
+
+        int elementCount = 0;
+        int[] elementName = new int[64];
+        int[] parent = new int[64];
+        int[] subtreeEnd = new int[64];
+        int[] textStart = new int[64];
+        int[] textEnd = new int[64];
+        int[] firstSegment = new int[64];
+        int[] firstAttribute = new int[65];
+
+        int segmentCount = 0;
+        int[] segmentOwner = new int[64];
+        int[] segmentStart = new int[64];
+        int[] segmentEnd = new int[64];
+
+        int attributeCount = 0;
+        int[] attributeName = new int[64];
+        int[] attributeValueStart = new int[65];
+
+        final StringBuilder text = new StringBuilder();
+        final StringBuilder attributeValues = new StringBuilder();
+
+        int[] open = new int[16];
+        int depth = 0;
+        boolean lastEventWasText = false;
+
+        int name(String prefix, String localName) {
+            String name = prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+            Integer index = nameIndex.get(name);
+            if (index == null) {
+                index = names.size();
+                names.add(name);
+                nameIndex.put(name, index);
+            }
+            return index;
+        }
+
+        void startElement(XMLStreamReader reader) {
+            int element = elementCount++;
+            if (element == elementName.length) {
+                int newSize = element * 2;
+                elementName = Arrays.copyOf(elementName, newSize);
+                parent = Arrays.copyOf(parent, newSize);
+                subtreeEnd = Arrays.copyOf(subtreeEnd, newSize);
+                textStart = Arrays.copyOf(textStart, newSize);
+                textEnd = Arrays.copyOf(textEnd, newSize);
+                firstSegment = Arrays.copyOf(firstSegment, newSize);
+                firstAttribute = Arrays.copyOf(firstAttribute, newSize + 1);
+            }
+            elementName[element] = name(reader.getPrefix(), reader.getLocalName());
+            parent[element] = depth == 0 ? DOCUMENT : open[depth - 1];
+            textStart[element] = text.length();
+            firstSegment[element] = segmentCount;
+            firstAttribute[element] = attributeCount;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                if (attributeCount == attributeName.length) {
+                    attributeName = Arrays.copyOf(attributeName, attributeCount * 2);
+                    attributeValueStart = Arrays.copyOf(attributeValueStart, attributeCount * 2 + 1);
+                }
+                attributeName[attributeCount] = name(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+                attributeValueStart[attributeCount] = attributeValues.length();
+                attributeValues.append(reader.getAttributeValue(i));
+                attributeCount++;
+            }
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+            open[depth++] = element;
+            lastEventWasText = false;
+        }
+
+        void endElement() {
+            int element = open[--depth];
+            subtreeEnd[element] = elementCount;
+            textEnd[element] = text.length();
+            lastEventWasText = false;
+        }
+
+        void text(XMLStreamReader reader) {
+            if (depth == 0) {
+                // whitespace outside the root element is not part of the document
+                return;
+            }
+            int owner = open[depth - 1];
+            if (!lastEventWasText) {
+                if (segmentCount == segmentOwner.length) {
+                    segmentOwner = Arrays.copyOf(segmentOwner, segmentCount * 2);
+                    segmentStart = Arrays.copyOf(segmentStart, segmentCount * 2);
+                    segmentEnd = Arrays.copyOf(segmentEnd, segmentCount * 2);
+                }
+                segmentOwner[segmentCount] = owner;
+                segmentStart[segmentCount] = text.length();
+                segmentCount++;
+            }
+            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            segmentEnd[segmentCount - 1] = text.length();
+            lastEventWasText = true;
+        }
+
+        void otherEvent() {
+            lastEventWasText = false;
+        }
+    }
+}
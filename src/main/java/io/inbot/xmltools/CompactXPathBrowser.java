@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Browser for a {@link CompactDocument} with the same getters as {@link XPathBrowser}.
+ *
+ * Expressions are limited to the simple subset of xpath that is also supported by the {@link StreamingXPathEvaluator}: child and descendant
+ * steps with names or <code>*</code>, positional and attribute predicates and a final <code>@attribute</code> or <code>text()</code> step.
+ * Other expressions result in an IllegalArgumentException. Names are matched on their local name.
+ *
+ * Instances are immutable and, like the document, thread safe.
+ */
+public class CompactXPathBrowser {
+
+    private static final Cache<String, SimplePath> PATHS = CacheBuilder.newBuilder().maximumSize(10000).build();
+
+    private final CompactDocument document;
+    private final int element;
+
+    CompactXPathBrowser(CompactDocument document, int element) {
+        this.document = document;
+        this.element = element;
+    }
+
+    public CompactDocument document() {
+        return document;
+    }
+
+    /**
+     * @return name of the current element, including the prefix, or an empty string for the document.
+     */
+    public String name() {
+        return document.name(element);
+    }
+
+    /**
+     * @param expr expression
+     * @return result of the expression or false if the node was absent or empty.
+     */
+    public boolean getBoolean(final String expr) {
+        return getString(expr).map(s -> Boolean.valueOf(s)).orElse(false);
+    }
+
+    public boolean getBoolean() {
+        return getBoolean(".");
+    }
+
+    public Optional<Double> getDouble(final String expr) {
+        return getString(expr).map(s -> Double.valueOf(s));
+    }
+
+    public Optional<Double> getDouble() {
+        return getDouble(".");
+    }
+
+    public Optional<Integer> getInt(final String expr) {
+        return getString(expr).map(s -> Integer.valueOf(s));
+    }
+
+    public Optional<Integer> getInt() {
+        return getInt(".");
+    }
+
+    public Optional<Long> getLong(final String expr) {
+        return getString(expr).map(s -> Long.valueOf(s));
+    }
+
+    public Optional<Long> getLong() {
+        return getLong(".");
+    }
+
+    /**
+     * @param expr expression
+     * @param defaultValue returned if the node was absent or empty.
+     * @return the value, without boxing
+     * @throws NumberFormatException if the value is not a long
+     */
+    public long getLong(final String expr, long defaultValue) {
+        String value = first(expr);
+        return Numbers.isBlank(value) ? defaultValue : Numbers.parseLong(value);
+    }
+
+    public OptionalLong getAsLong(final String expr) {
+        String value = first(expr);
+        return Numbers.isBlank(value) ? OptionalLong.empty() : OptionalLong.of(Numbers.parseLong(value));
+    }
+
+    public int getInt(final String expr, int defaultValue) {
+        String value = first(expr);
+        return Numbers.isBlank(value) ? defaultValue : Numbers.parseInt(value);
+    }
+
+    public OptionalInt getAsInt(final String expr) {
+        String value = first(expr);
+        return Numbers.isBlank(value) ? OptionalInt.empty() : OptionalInt.of(Numbers.parseInt(value));
+    }
+
+    public double getDouble(final String expr, double defaultValue) {
+        String value = first(expr);
+        return Numbers.isBlank(value) ? defaultValue : Numbers.parseDouble(value);
+    }
+
+    public OptionalDouble getAsDouble(final String expr) {
+        String value = first(expr);
+        return Numbers.isBlank(value) ? OptionalDouble.empty() : OptionalDouble.of(Numbers.parseDouble(value));
+    }
+
+    /**
+     * @param expr expression
+     * @param defaultValue used for nodes that are empty
+     * @return the values of all matches
+     * @throws NumberFormatException if a value is not a long
+     */
+    public long[] getLongValues(final String expr, long defaultValue) {
+        List<String> values = values(expr, false);
+        long[] result = new long[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            String value = values.get(i);
+            result[i] = Numbers.isBlank(value) ? defaultValue : Numbers.parseLong(value);
+        }
+        return result;
+    }
+
+    /**
+     * @param expr expression
+     * @param defaultValue used for nodes that are empty, e.g. Double.NaN
+     * @return the values of all matches
+     * @throws NumberFormatException if a value is not a double
+     */
+    public double[] getDoubleValues(final String expr, double defaultValue) {
+        List<String> values = values(expr, false);
+        double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            String value = values.get(i);
+            result[i] = Numbers.isBlank(value) ? defaultValue : Numbers.parseDouble(value);
+        }
+        return result;
+    }
+
+    public Optional<Number> getNumber(Locale locale, final String expr) {
+        return getString(expr).map(s -> LocaleNumberParser.forLocale(locale).parseNumber(s));
+    }
+
+    public Optional<BigDecimal> getBigDecimal(Locale locale, final String expr) {
+        return getString(expr).map(s -> LocaleNumberParser.forLocale(locale).parseBigDecimal(s));
+    }
+
+    public Optional<BigInteger> getBigInteger(final String expr) {
+        return getString(expr).map(s -> new BigInteger(s));
+    }
+
+    /**
+     * @param expr expression
+     * @return the trimmed value of the first match or empty if there is no match or the value is blank.
+     */
+    public Optional<String> getString(final String expr) {
+        List<String> values = values(expr, true);
+        if (values.isEmpty()) {
+            return Optional.empty();
+        }
+        String result = values.get(0).trim();
+        return StringUtils.isBlank(result) ? Optional.empty() : Optional.of(result);
+    }
+
+    public Optional<String> getString() {
+        return getString(".");
+    }
+
+    /**
+     * @param expr expression
+     * @return the trimmed values of all matches
+     */
+    public String[] getStringValues(final String expr) {
+        List<String> values = values(expr, false);
+        String[] result = new String[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).trim();
+        }
+        return result;
+    }
+
+    /**
+     * @param expr expression
+     * @return number of matching nodes
+     */
+    public int count(final String expr) {
+        return values(expr, false).size();
+    }
+
+    public Optional<String> getNodeAttribute(String key) {
+        if (DomSupport.isSimpleName(key)) {
+            Integer nameId = document.localNameId(key);
+            String value = nameId == null ? null : document.attribute(element, nameId);
+            return StringUtils.isBlank(value) ? Optional.empty() : Optional.of(value.trim());
+        }
+        return getString("@" + key);
+    }
+
+    public Map<String, String> nodeAttributes() {
+        TreeMap<String, String> map = new TreeMap<>();
+        forEachAttribute(map::put);
+        return map;
+    }
+
+    /**
+     * Visit the attributes of the current element without creating a map.
+     *
+     * @param consumer receives the name and trimmed value of each attribute
+     */
+    public void forEachAttribute(BiConsumer<String, String> consumer) {
+        for (int i = 0; i < document.attributeCount(element); i++) {
+            consumer.accept(document.attributeName(element, i), document.attributeValue(element, i).trim());
+        }
+    }
+
+    public CompactXPathBrowser browseFirst(String expression) {
+        int[] matches = elements(expression);
+        if (matches.length == 0) {
+            throw new NoSuchElementException("node does not exist for " + expression);
+        }
+        return new CompactXPathBrowser(document, matches[0]);
+    }
+
+    public Stream<CompactXPathBrowser> streamSubNodes() {
+        return StreamSupport.stream(browseSubNodes().spliterator(), false);
+    }
+
+    public Stream<CompactXPathBrowser> streamMatching(String expr) {
+        return StreamSupport.stream(browseMatching(expr).spliterator(), false);
+    }
+
+    public Iterable<CompactXPathBrowser> browseSubNodes() {
+        return browseMatching("./*");
+    }
+
+    /**
+     * @param expr expression that selects elements
+     * @return browsers for the matching elements in document order
+     */
+    public Iterable<CompactXPathBrowser> browseMatching(final String expr) {
+        final int[] matches = elements(expr);
+        return () -> new Iterator<CompactXPathBrowser>() {
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < matches.length;
+            }
+
+            @Override
+            public CompactXPathBrowser next() {
+                if (i >= matches.length) {
+                    throw new NoSuchElementException();
+                }
+                return new CompactXPathBrowser(document, matches[i++]);
+            }
+        };
+    }
+
+    private int[] elements(String expr) {
+        SimplePath path = path(expr);
+        if (path.attribute() != null || path.isText()) {
+            throw new IllegalArgumentException("expression does not select elements: " + expr);
+        }
+        return document.select(element, path);
+    }
+
+    private String first(String expr) {
+        List<String> values = values(expr, true);
+        return values.isEmpty() ? "" : values.get(0);
+    }
+
+    private List<String> values(String expr, boolean firstOnly) {
+        SimplePath path = path(expr);
+        int[] matches = document.select(element, path);
+        List<String> values = new ArrayList<>(firstOnly ? 1 : matches.length);
+        if (path.attribute() != null) {
+            Integer nameId = document.localNameId(path.attribute());
+            if (nameId != null) {
+                for (int match : matches) {
+                    String value = document.attribute(match, nameId);
+                    if (value != null) {
+                        values.add(value);
+                        if (firstOnly) {
+                            break;
+                        }
+                    }
+                }
+            }
+        } else if (path.isText()) {
+            for (int match : matches) {
+                values.addAll(document.textChildren(match));
+                if (firstOnly && !values.isEmpty()) {
+                    break;
+                }
+            }
+        } else if (matches.length > 0) {
+            int count = firstOnly ? 1 : matches.length;
+            for (int i = 0; i < count; i++) {
+                values.add(document.stringValue(matches[i]));
+            }
+        }
+        return values;
+    }
+
+    private static SimplePath path(String expr) {
+        SimplePath path = PATHS.getIfPresent(expr);
+        if (path == null) {
+            path = SimplePath.parse(expr);
+            PATHS.put(expr, path);
+        }
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return element == CompactDocument.DOCUMENT ? "#document" : name();
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Thread safe handle for a compiled xpath expression. Get instances from {@link XPathExpressionCache#get(String)}.
+ *
+ * Unlike {@link javax.xml.xpath.XPathExpression}, a CompiledXPath may be shared between threads and kept around as long as you like.
+ */
+public interface CompiledXPath {
+
+    /**
+     * @return the expression string this was compiled from
+     */
+    String expression();
+
+    /**
+     * Evaluate the expression.
+     *
+     * @param item the context item, usually a {@link org.w3c.dom.Node}
+     * @param returnType one of the {@link javax.xml.xpath.XPathConstants} types
+     * @return result of the specified type or null
+     * @throws io.inbot.xmltools.exceptions.RethrownException if the evaluation fails
+     */
+    Object evaluate(Object item, QName returnType);
+}
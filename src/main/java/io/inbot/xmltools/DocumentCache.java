@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.w3c.dom.Document;
+
+/**
+ * Cache of parsed documents for xml that is parsed over and over again, like catalogs or configuration. Documents are looked up by a hash
+ * of their content or by a key of your choosing. Only the first lookup pays for parsing; after that the cached browser is returned.
+ *
+ * The cache is bounded by the estimated heap use of the cached DOMs rather than by the number of documents, so a few huge documents can't
+ * push out everything else. Entries also expire after a fixed time to live, which is what you want for documents that change upstream.
+ *
+ * Documents are frozen (see {@link XPathBrowser#freeze()}) before they are cached, so the returned browsers can be shared between threads.
+ * Don't modify the nodes of a cached document.
+ *
+ * Create instances with {@link XpathBrowserFactory#documentCache(long, long, TimeUnit)}.
+ */
+public class DocumentCache {
+    private final PooledXmlParser parser;
+    private final XPathExpressionCache expressionCache;
+    private final Cache<Object, CachedDocument> documents;
+
+    DocumentCache(PooledXmlParser parser, XPathExpressionCache expressionCache, long maximumWeightInBytes, long timeToLive, TimeUnit unit) {
+        this(parser, expressionCache, maximumWeightInBytes, timeToLive, unit, Ticker.systemTicker());
+    }
+
+    DocumentCache(PooledXmlParser parser, XPathExpressionCache expressionCache, long maximumWeightInBytes, long timeToLive, TimeUnit unit,
+            Ticker ticker) {
+        this.parser = parser;
+        this.expressionCache = expressionCache;
+        this.documents = CacheBuilder.newBuilder()
+            // guava divides the maximum weight over its segments; with one segment a document may use the whole budget. Only loads lock.
+            .concurrencyLevel(1)
+            .maximumWeight(maximumWeightInBytes)
+            .weigher((Object key, CachedDocument value) -> value.weight)
+            .expireAfterWrite(timeToLive, unit)
+            .ticker(ticker)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * @param xml xml
+     * @return browser for the document, parsed only if the same content is not in the cache already
+     */
+    public XPathBrowser browse(String xml) {
+        HashCode key = Hashing.sha256().newHasher().putByte((byte) 0).putUnencodedChars(xml).hash();
+        return get(key, () -> parser.parseXml(xml));
+    }
+
+    /**
+     * @param xml xml; the encoding is detected by the parser
+     * @return browser for the document, parsed only if the same content is not in the cache already
+     */
+    public XPathBrowser browse(byte[] xml) {
+        HashCode key = Hashing.sha256().newHasher().putByte((byte) 1).putBytes(xml).hash();
+        return get(key, () -> parser.parseXml(xml));
+    }
+
+    /**
+     * Look up a document by a key of your choosing, e.g. a file name or url. This avoids even reading the content for hot documents.
+     *
+     * @param key key
+     * @param source called to open the xml when the key is not in the cache; the stream is closed after parsing
+     * @return browser for the document
+     */
+    public XPathBrowser browse(String key, Callable<? extends InputStream> source) {
+        return get(key, () -> {
+            try (InputStream is = source.call()) {
+                return parser.parseXml(is);
+            }
+        });
+    }
+
+    /**
+     * @param key key passed to {@link #browse(String, Callable)}
+     */
+    public void invalidate(String key) {
+        documents.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        documents.invalidateAll();
+    }
+
+    /**
+     * @return number of cached documents
+     */
+    public long size() {
+        return documents.size();
+    }
+
+    /**
+     * @return hit, miss, load and eviction counts
+     */
+    public CacheStats stats() {
+        return documents.stats();
+    }
+
+    private XPathBrowser get(Object key, Callable<Document> loader) {
+        try {
+            return documents.get(key, () -> {
+                Document document = loader.call();
+                FrozenDocument frozen = FrozenDocument.freeze(document);
+                return new CachedDocument(new XPathBrowser(expressionCache, document, frozen),
+                        (int) Math.min(Integer.MAX_VALUE, frozen.estimatedSizeInBytes()));
+            }).browser;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw RethrownException.rethrow(e.getCause());
+        }
+    }
+
+    private static final class CachedDocument {
+        private final XPathBrowser browser;
+        private final int weight;
+
+        private CachedDocument(XPathBrowser browser, int weight) {
+            this.browser = browser;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * DOM helpers for evaluating simple paths directly against the DOM, with the same results the xpath engine gives on the DOMs produced by
+ * {@link PooledXmlParser}.
+ *
+ * Names are matched like the xpath engine does on a child or attribute axis: on DOMs built without namespace support the prefix is ignored;
+ * on namespace aware DOMs only nodes without a namespace match. Namespace declarations are not attributes.
+ */
+final class DomSupport {
+
+    private DomSupport() {
+    }
+
+    /**
+     * @param node element or attribute
+     * @return the name that an unprefixed xpath name test is compared to or null if no such name test can match the node.
+     */
+    static String matchableName(Node node) {
+        String localName = node.getLocalName();
+        if (localName != null) {
+            return node.getNamespaceURI() == null ? localName : null;
+        }
+        String nodeName = node.getNodeName();
+        int colon = nodeName.indexOf(':');
+        return colon < 0 ? nodeName : nodeName.substring(colon + 1);
+    }
+
+    /**
+     * @param node element or attribute
+     * @param name unprefixed name
+     * @return true if an xpath name test for name matches the node
+     */
+    static boolean nameMatches(Node node, String name) {
+        String localName = node.getLocalName();
+        if (localName != null) {
+            return node.getNamespaceURI() == null && name.equals(localName);
+        }
+        String nodeName = node.getNodeName();
+        int colon = nodeName.indexOf(':');
+        if (colon < 0) {
+            return name.equals(nodeName);
+        }
+        return nodeName.length() - colon - 1 == name.length() && nodeName.startsWith(name, colon + 1);
+    }
+
+    /**
+     * @param attribute attribute node
+     * @return true if the attribute is a namespace declaration, which xpath does not treat as an attribute
+     */
+    static boolean isNamespaceDeclaration(Node attribute) {
+        String name = attribute.getNodeName();
+        return name.startsWith("xmlns") && (name.length() == 5 || name.charAt(5) == ':');
+    }
+
+    /**
+     * @param name name
+     * @return true if name is an unprefixed name that an <code>@name</code> expression would look up, so that {@link #attribute(Node, String)}
+     *         gives the same result as the xpath engine
+     */
+    static boolean isSimpleName(String name) {
+        if (name.isEmpty() || name.startsWith("xmlns")) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(Character.isLetter(c) || c == '_' || i > 0 && (Character.isDigit(c) || c == '-' || c == '.'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param node element
+     * @param name unprefixed attribute name
+     * @return the attribute or null
+     */
+    static Attr attribute(Node node, String name) {
+        if (node.getNodeType() != Node.ELEMENT_NODE) {
+            return null;
+        }
+        Element element = (Element) node;
+        if (element.getLocalName() != null) {
+            // namespace aware: prefixed attributes are in a namespace, so only the attribute without prefix can match
+            Attr attr = element.getAttributeNode(name);
+            return attr != null && attr.getNamespaceURI() == null && !isNamespaceDeclaration(attr) ? attr : null;
+        }
+        // otherwise p:name matches as well, just like it does for the xpath engine, and the first one in attribute order wins
+        NamedNodeMap attributes = element.getAttributes();
+        int index = attributeIndex(attributes, name, 0);
+        return index < 0 ? null : (Attr) attributes.item(index);
+    }
+
+    /**
+     * @param node element
+     * @param name unprefixed attribute name
+     * @return true if more than one attribute of the node can match name, which is the case for elements of documents that were not parsed
+     *         namespace aware: <code>@id</code> matches both <code>id</code> and <code>p:id</code>
+     */
+    static boolean mayHaveSeveralAttributes(Node node) {
+        return node.getNodeType() == Node.ELEMENT_NODE && node.getLocalName() == null;
+    }
+
+    /**
+     * @param attributes attributes of an element
+     * @param name unprefixed attribute name
+     * @param from index to start at
+     * @return index of the next attribute that an xpath name test for name matches or -1
+     */
+    static int attributeIndex(NamedNodeMap attributes, String name, int from) {
+        for (int i = from; i < attributes.getLength(); i++) {
+            Node candidate = attributes.item(i);
+            if (!isNamespaceDeclaration(candidate) && nameMatches(candidate, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param node any node
+     * @return the xpath string value of the node
+     */
+    static String stringValue(Node node) {
+        switch (node.getNodeType()) {
+        case Node.DOCUMENT_NODE:
+            Element documentElement = ((Document) node).getDocumentElement();
+            return documentElement == null ? "" : stringValue(documentElement);
+        case Node.ELEMENT_NODE:
+        case Node.DOCUMENT_FRAGMENT_NODE:
+            if (node.getFirstChild() != null && node.getFirstChild().getNextSibling() == null && isText(node.getFirstChild())) {
+                // common case of an element with just text, saves a StringBuilder
+                return node.getFirstChild().getNodeValue();
+            }
+            StringBuilder buf = new StringBuilder();
+            appendText(node, buf);
+            return buf.toString();
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+            return mergedText(node);
+        default:
+            String value = node.getNodeValue();
+            return value == null ? "" : value;
+        }
+    }
+
+    private static void appendText(Node node, StringBuilder buf) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (isText(child)) {
+                buf.append(child.getNodeValue());
+            } else if (child.getNodeType() == Node.ELEMENT_NODE || child.getNodeType() == Node.ENTITY_REFERENCE_NODE) {
+                appendText(child, buf);
+            }
+        }
+    }
+
+    static boolean isText(Node node) {
+        short type = node.getNodeType();
+        return type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE;
+    }
+
+    /**
+     * Xpath treats adjacent text and CDATA nodes as a single text node.
+     *
+     * @param first a text node
+     * @return the text of first and any text nodes directly following it
+     */
+    static String mergedText(Node first) {
+        Node next = first.getNextSibling();
+        if (next == null || !isText(next)) {
+            return first.getNodeValue();
+        }
+        StringBuilder buf = new StringBuilder(first.getNodeValue());
+        for (Node n = next; n != null && isText(n); n = n.getNextSibling()) {
+            buf.append(n.getNodeValue());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Visit every node, attribute and value below root. On a deferred DOM this expands all nodes, so that afterwards reading the DOM no
+     * longer modifies it.
+     *
+     * @param root node
+     * @return rough estimate of the heap used by the nodes in bytes
+     */
+    static long expand(Node root) {
+        long bytes = 0;
+        Node current = root;
+        while (current != null) {
+            bytes += estimateSize(current);
+            NamedNodeMap attributes = current.getAttributes();
+            if (attributes != null) {
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Node attribute = attributes.item(i);
+                    bytes += estimateSize(attribute);
+                    // attribute values are stored as child text nodes in some DOM implementations
+                    attribute.getFirstChild();
+                }
+            }
+            Node next = current.getFirstChild();
+            while (next == null && current != root) {
+                next = current.getNextSibling();
+                if (next == null) {
+                    current = current.getParentNode();
+                }
+            }
+            current = next;
+        }
+        return bytes;
+    }
+
+    private static long estimateSize(Node node) {
+        // object header and fields of a typical DOM node; names are shared between nodes
+        long bytes = 64;
+        String value = node.getNodeValue();
+        if (value != null) {
+            bytes += 40 + 2L * value.length();
+        }
+        return bytes;
+    }
+}
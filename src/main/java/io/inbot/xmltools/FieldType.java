@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.function.Function;
+
+/**
+ * Types for the fields of a {@link RecordExtractor}. Conversions are the same as those of the corresponding {@link XPathBrowser} getters.
+ *
+ * @param <V> java type of the field
+ */
+public final class FieldType<V> {
+
+    public static final FieldType<String> STRING = new FieldType<>("string", false, s -> s);
+    public static final FieldType<Integer> INT = new FieldType<>("int", false, Integer::valueOf);
+    public static final FieldType<Long> LONG = new FieldType<>("long", false, Long::valueOf);
+    public static final FieldType<Double> DOUBLE = new FieldType<>("double", false, Double::valueOf);
+    public static final FieldType<Boolean> BOOLEAN = new FieldType<>("boolean", false, Boolean::valueOf);
+    /**
+     * All matching values, like {@link XPathBrowser#getStringValues(String)}.
+     */
+    public static final FieldType<String[]> STRING_VALUES = new FieldType<>("string values", true, null);
+
+    private final String name;
+    private final boolean multiValued;
+    private final Function<String, V> converter;
+
+    private FieldType(String name, boolean multiValued, Function<String, V> converter) {
+        this.name = name;
+        this.multiValued = multiValued;
+        this.converter = converter;
+    }
+
+    boolean isMultiValued() {
+        return multiValued;
+    }
+
+    /**
+     * @param value trimmed, non blank value
+     * @return converted value
+     */
+    V convert(String value) {
+        return converter.apply(value);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
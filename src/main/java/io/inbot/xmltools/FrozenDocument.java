@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.ConcurrentModificationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+/**
+ * A document that has been prepared for concurrent reads.
+ *
+ * The Xerces DOM is not thread safe, not even for reads: a document built with deferred node expansion creates its nodes on first access.
+ * Freezing walks the whole document once, so that every node exists and reads no longer modify anything. The DOM has no public read only
+ * mode, so instead a mutation listener records any modification after freezing, after which browsers on the document fail fast with a
+ * {@link ConcurrentModificationException} rather than returning results from a half modified tree.
+ */
+final class FrozenDocument implements EventListener {
+    private static final String USER_DATA_KEY = FrozenDocument.class.getName();
+    private static final String[] MUTATION_EVENTS = { "DOMSubtreeModified", "DOMAttrModified", "DOMCharacterDataModified" };
+
+    private final long estimatedSizeInBytes;
+    private volatile boolean modified = false;
+
+    private FrozenDocument(long estimatedSizeInBytes) {
+        this.estimatedSizeInBytes = estimatedSizeInBytes;
+    }
+
+    /**
+     * Freeze the document that node belongs to. Call this before the document is shared between threads; freezing is not thread safe
+     * itself. Freezing a document twice returns the same instance.
+     *
+     * @param node any node of the document
+     * @return the frozen document
+     */
+    static FrozenDocument freeze(Node node) {
+        Document document = node.getNodeType() == Node.DOCUMENT_NODE ? (Document) node : node.getOwnerDocument();
+        Object existing = document.getUserData(USER_DATA_KEY);
+        if (existing instanceof FrozenDocument && !((FrozenDocument) existing).modified) {
+            return (FrozenDocument) existing;
+        }
+        FrozenDocument frozen = new FrozenDocument(DomSupport.expand(document));
+        if (document instanceof EventTarget) {
+            for (String type : MUTATION_EVENTS) {
+                ((EventTarget) document).addEventListener(type, frozen, true);
+            }
+        }
+        document.setUserData(USER_DATA_KEY, frozen, null);
+        return frozen;
+    }
+
+    /**
+     * @return rough estimate of the heap used by the nodes of the document
+     */
+    long estimatedSizeInBytes() {
+        return estimatedSizeInBytes;
+    }
+
+    /**
+     * @throws ConcurrentModificationException if the document was modified after it was frozen
+     */
+    void checkNotModified() {
+        if (modified) {
+            throw new ConcurrentModificationException("document was modified after it was frozen");
+        }
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        modified = true;
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+
+/**
+ * Push style record parser for xml that arrives in chunks, e.g. a chunked http body. You {@link #feed(ByteBuffer)} chunks as they arrive
+ * and every record that matches the record path is passed to the consumer as soon as its end tag has been fed, so extraction starts before
+ * the whole body is there. Records are split off just like {@link XpathBrowserFactory#browseRecords(InputStream, Charset, String)} does.
+ *
+ * The StAX parser that splits the records pulls its input, so it runs on a thread of the executor and blocks there while it waits for the
+ * next chunk; the consumer is called on that thread as well. Use an executor that can spare a thread for each document that is being fed
+ * concurrently. Feeding copies the chunks and blocks when more than maxBufferedBytes are waiting to be parsed, so a slow consumer slows
+ * down the producer rather than filling up the heap.
+ *
+ * Create instances with {@link XpathBrowserFactory#incrementalRecords(String, Consumer)}.
+ */
+public class IncrementalRecordParser implements Closeable {
+    private final long maxBufferedBytes;
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+
+    private final Object lock = new Object();
+    private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+    private long bufferedBytes = 0;
+    private boolean finished = false;
+
+    IncrementalRecordParser(PooledXmlParser parser, XPathExpressionCache expressionCache, String recordPath, Charset encoding, Executor executor,
+            long maxBufferedBytes, Consumer<? super XPathBrowser> consumer) {
+        SimplePath path = SimplePath.parse(recordPath);
+        if (path.attribute() != null || path.isText()) {
+            throw new IllegalArgumentException("record path should select elements: " + recordPath);
+        }
+        this.maxBufferedBytes = maxBufferedBytes;
+        // wake up blocked feeders and the parser when the parse fails or is cancelled
+        completion.whenComplete((count, t) -> {
+            synchronized (lock) {
+                chunks.clear();
+                bufferedBytes = 0;
+                lock.notifyAll();
+            }
+        });
+        Runnable parse = () -> {
+            try {
+                ChunkInputStream in = new ChunkInputStream();
+                XMLStreamReader reader = encoding == null ? StaxSupport.createReader(in) : StaxSupport.createReader(in, encoding.name());
+                long count = 0;
+                try (RecordReader records = new RecordReader(reader, path, parser)) {
+                    Document record;
+                    while ((record = records.next()) != null) {
+                        consumer.accept(new XPathBrowser(expressionCache, record.getDocumentElement()));
+                        count++;
+                    }
+                }
+                completion.complete(count);
+            } catch (Throwable t) {
+                completion.completeExceptionally(t);
+            }
+        };
+        try {
+            executor.execute(parse);
+        } catch (RejectedExecutionException e) {
+            completion.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return shared pool of daemon threads that grows with the number of documents that are fed concurrently
+     */
+    static Executor defaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Add the remaining bytes of the chunk. The chunk is copied without changing its position, so the buffer may be reused right after
+     * this returns.
+     *
+     * @param chunk next part of the document
+     * @throws IllegalStateException if {@link #finish()} was called or parsing failed; the cause has the parse error
+     */
+    public void feed(ByteBuffer chunk) {
+        ByteBuffer copy = ByteBuffer.allocate(chunk.remaining());
+        copy.put(chunk.duplicate()).flip();
+        synchronized (lock) {
+            while (!completion.isDone() && !finished && bufferedBytes > 0 && bufferedBytes + copy.remaining() > maxBufferedBytes) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting for the parser to catch up", e);
+                }
+            }
+            checkAccepting();
+            if (copy.hasRemaining()) {
+                chunks.add(copy);
+                bufferedBytes += copy.remaining();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    public void feed(byte[] chunk, int offset, int length) {
+        feed(ByteBuffer.wrap(chunk, offset, length));
+    }
+
+    /**
+     * Signal that the whole document has been fed.
+     *
+     * @return future that completes with the number of records once the last record was passed to the consumer or that fails with the
+     *         parse error
+     */
+    public CompletableFuture<Long> finish() {
+        synchronized (lock) {
+            finished = true;
+            lock.notifyAll();
+        }
+        return completion;
+    }
+
+    /**
+     * @return the future that is returned by {@link #finish()}
+     */
+    public CompletableFuture<Long> completion() {
+        return completion;
+    }
+
+    /**
+     * @return bytes that were fed but not yet parsed
+     */
+    public long bufferedBytes() {
+        synchronized (lock) {
+            return bufferedBytes;
+        }
+    }
+
+    /**
+     * Stop parsing. Unless the parse already completed, the completion fails with a {@link CancellationException}.
+     */
+    @Override
+    public void close() {
+        completion.cancel(false);
+    }
+
+    private void checkAccepting() {
+        if (completion.isCompletedExceptionally()) {
+            try {
+                completion.join();
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("parsing failed", e.getCause() != null ? e.getCause() : e);
+            }
+        }
+        if (finished || completion.isDone()) {
+            throw new IllegalStateException("input was already finished");
+        }
+    }
+
+    /**
+     * Input stream that hands out the fed chunks and blocks until the next one arrives.
+     */
+    private final class ChunkInputStream extends InputStream {
+        private ByteBuffer current;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            synchronized (lock) {
+                while (current == null || !current.hasRemaining()) {
+                    if (completion.isDone()) {
+                        throw new IOException("parsing was stopped");
+                    }
+                    current = chunks.poll();
+                    if (current == null) {
+                        if (finished) {
+                            return -1;
+                        }
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("interrupted while waiting for input");
+                        }
+                    }
+                }
+                int read = Math.min(len, current.remaining());
+                current.get(b, off, read);
+                bufferedBytes -= read;
+                lock.notifyAll();
+                return read;
+            }
+        }
+    }
+
+    private static final class DefaultExecutorHolder {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "xmltools-record-feed-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
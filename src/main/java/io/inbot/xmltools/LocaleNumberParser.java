@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Locale aware number parsing for the getters of {@link XPathBrowser}. NumberFormat and DecimalFormat are expensive to create and not thread
+ * safe, so instead of creating one per call, this keeps an {@link ObjectPool} of formats per locale and borrows one for each parse. New
+ * instances are cloned from a prototype, which is a lot cheaper than {@link NumberFormat#getInstance(Locale)}.
+ */
+final class LocaleNumberParser {
+
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final ConcurrentMap<Locale, LocaleNumberParser> PARSERS = new ConcurrentHashMap<>();
+
+    private final ObjectPool<NumberFormat> numberFormats;
+    private final ObjectPool<DecimalFormat> bigDecimalFormats;
+
+    private LocaleNumberParser(Locale locale) {
+        NumberFormat numberPrototype = NumberFormat.getInstance(locale);
+        numberFormats = new ObjectPool<>(POOL_SIZE, () -> (NumberFormat) numberPrototype.clone(), f -> {
+        });
+        NumberFormat bigDecimalFormat = NumberFormat.getInstance(locale);
+        if (bigDecimalFormat instanceof DecimalFormat) {
+            DecimalFormat bigDecimalPrototype = (DecimalFormat) bigDecimalFormat;
+            bigDecimalPrototype.setParseBigDecimal(true);
+            bigDecimalFormats = new ObjectPool<>(POOL_SIZE, () -> (DecimalFormat) bigDecimalPrototype.clone(), f -> {
+            });
+        } else {
+            bigDecimalFormats = null;
+        }
+    }
+
+    /**
+     * @param locale locale
+     * @return the shared parser for the locale
+     */
+    static LocaleNumberParser forLocale(Locale locale) {
+        LocaleNumberParser parser = PARSERS.get(locale);
+        if (parser == null) {
+            parser = PARSERS.computeIfAbsent(locale, LocaleNumberParser::new);
+        }
+        return parser;
+    }
+
+    /**
+     * @param value value
+     * @return the parsed number
+     * @throws RethrownException wrapping the ParseException if the value is not a number
+     */
+    Number parseNumber(String value) {
+        NumberFormat format = numberFormats.borrow();
+        try {
+            return format.parse(value);
+        } catch (ParseException e) {
+            throw RethrownException.rethrow(e);
+        } finally {
+            numberFormats.release(format);
+        }
+    }
+
+    /**
+     * @param value value
+     * @return the parsed value or null if the value does not start with a number
+     */
+    BigDecimal parseBigDecimal(String value) {
+        return withBigDecimalFormat(format -> (BigDecimal) format.parse(value, new ParsePosition(0)));
+    }
+
+    /**
+     * Borrow a single format for parsing many values.
+     *
+     * @param function function that uses the format; it must not let the format escape.
+     * @param <T> result type
+     * @return result of the function
+     */
+    <T> T withBigDecimalFormat(Function<DecimalFormat, T> function) {
+        if (bigDecimalFormats == null) {
+            // same behavior as casting NumberFormat.getInstance to DecimalFormat for a locale that does not use one
+            throw new ClassCastException("no DecimalFormat available for this locale");
+        }
+        DecimalFormat format = bigDecimalFormats.borrow();
+        try {
+            return function.apply(format);
+        } finally {
+            bigDecimalFormats.release(format);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import javax.xml.namespace.QName;
+
+/**
+ * {@link CompiledXPath} that reports the evaluation time of the wrapped expression to a {@link MetricsListener}.
+ */
+final class MeasuredXPath implements CompiledXPath {
+
+    private final CompiledXPath delegate;
+    private final MetricsListener metrics;
+
+    MeasuredXPath(CompiledXPath delegate, MetricsListener metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String expression() {
+        return delegate.expression();
+    }
+
+    @Override
+    public Object evaluate(Object item, QName returnType) {
+        long start = System.nanoTime();
+        try {
+            return delegate.evaluate(item, returnType);
+        } finally {
+            metrics.expressionEvaluated(delegate.expression(), System.nanoTime() - start);
+        }
+    }
+
+    CompiledXPath delegate() {
+        return delegate;
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * {@link MetricsListener} that keeps counters and latency histograms in memory. Useful for tuning cache and pool sizes and for finding slow
+ * expressions without depending on a metrics library.
+ *
+ * <pre>
+ * MetricsCollector metrics = new MetricsCollector();
+ * PooledXmlParser parser = new PooledXmlParser(20, 20, supplier, metrics);
+ * XPathExpressionCache cache = new XPathExpressionCache(1000, 60, 20, metrics);
+ * ...
+ * LOG.info(metrics.toString());
+ * </pre>
+ */
+public class MetricsCollector implements MetricsListener {
+
+    private final LongAdder parsedBytes = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    private final LongAdder builderBorrows = new LongAdder();
+    private final LongAdder builderCreations = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final Histogram parseLatency = new Histogram();
+    private final Histogram compileLatency = new Histogram();
+    private final Histogram evaluationLatency = new Histogram();
+    private final ConcurrentMap<String, ExpressionStats> expressionStats = new ConcurrentHashMap<>();
+    private final int maxTrackedExpressions;
+
+    public MetricsCollector() {
+        this(1000);
+    }
+
+    /**
+     * @param maxTrackedExpressions maximum number of expressions for which evaluation statistics are kept. Protects against unbounded memory
+     *        use when expressions are generated dynamically.
+     */
+    public MetricsCollector(int maxTrackedExpressions) {
+        this.maxTrackedExpressions = maxTrackedExpressions;
+    }
+
+    @Override
+    public void documentParsed(long nanos, long bytes) {
+        parseLatency.record(nanos);
+        if (bytes > 0) {
+            parsedBytes.add(bytes);
+        }
+    }
+
+    @Override
+    public void parseFailed(long nanos) {
+        parseFailures.increment();
+    }
+
+    @Override
+    public void documentBuilderBorrowed() {
+        builderBorrows.increment();
+    }
+
+    @Override
+    public void documentBuilderCreated(long nanos) {
+        builderCreations.increment();
+    }
+
+    @Override
+    public void expressionCacheHit(String expression) {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void expressionCacheMiss(String expression) {
+        cacheMisses.increment();
+    }
+
+    @Override
+    public void expressionEvicted(String expression) {
+        evictions.increment();
+    }
+
+    @Override
+    public void expressionCompiled(String expression, long nanos) {
+        compileLatency.record(nanos);
+    }
+
+    @Override
+    public void expressionEvaluated(String expression, long nanos) {
+        evaluationLatency.record(nanos);
+        ExpressionStats stats = expressionStats.get(expression);
+        if (stats == null && expressionStats.size() < maxTrackedExpressions) {
+            stats = expressionStats.computeIfAbsent(expression, ExpressionStats::new);
+        }
+        if (stats != null) {
+            stats.record(nanos);
+        }
+    }
+
+    public long parseCount() {
+        return parseLatency.count();
+    }
+
+    public long parseFailures() {
+        return parseFailures.sum();
+    }
+
+    public long parsedBytes() {
+        return parsedBytes.sum();
+    }
+
+    public Histogram parseLatency() {
+        return parseLatency;
+    }
+
+    public long documentBuilderBorrows() {
+        return builderBorrows.sum();
+    }
+
+    /**
+     * @return number of borrows that had to create a new builder; if this keeps growing, the pool is too small.
+     */
+    public long documentBuilderCreations() {
+        return builderCreations.sum();
+    }
+
+    public long expressionCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long expressionCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * @return fraction of lookups that were served from the cache or NaN if there were no lookups
+     */
+    public double expressionCacheHitRatio() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? Double.NaN : (double) hits / total;
+    }
+
+    public long expressionEvictions() {
+        return evictions.sum();
+    }
+
+    public long compileCount() {
+        return compileLatency.count();
+    }
+
+    public Histogram compileLatency() {
+        return compileLatency;
+    }
+
+    public Histogram evaluationLatency() {
+        return evaluationLatency;
+    }
+
+    /**
+     * @param n maximum number of expressions
+     * @return the expressions with the highest mean evaluation time, slowest first
+     */
+    public List<ExpressionStats> slowestExpressions(int n) {
+        return expressionStats.values().stream()
+            .sorted(Comparator.comparingDouble(ExpressionStats::meanNanos).reversed())
+            .limit(n)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("parses: ").append(parseCount()).append(" (").append(parseFailures()).append(" failed, ").append(parsedBytes())
+            .append(" bytes) ").append(parseLatency).append('\n');
+        buf.append("document builders: ").append(documentBuilderBorrows()).append(" borrowed, ").append(documentBuilderCreations())
+            .append(" created\n");
+        buf.append(String.format(Locale.ROOT, "expression cache: %d hits, %d misses, hit ratio %.3f, %d evictions%n", expressionCacheHits(),
+                expressionCacheMisses(), expressionCacheHitRatio(), expressionEvictions()));
+        buf.append("compiles: ").append(compileLatency).append('\n');
+        buf.append("evaluations: ").append(evaluationLatency).append('\n');
+        for (ExpressionStats stats : slowestExpressions(10)) {
+            buf.append("  ").append(stats).append('\n');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Lock free latency histogram with power of two buckets. Percentiles are approximate: they return the upper bound of the bucket.
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            totalNanos.add(value);
+            maxNanos.accumulate(value);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+
+        public double meanNanos() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) totalNanos.sum() / n;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return upper bound in nanoseconds of the bucket that contains the percentile
+         */
+        public long percentileNanos(double percentile) {
+            long total = 0;
+            long[] snapshot = new long[buckets.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            long threshold = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= threshold && seen > 0) {
+                    return i == 0 ? 0 : Math.min((1L << i) - 1, maxNanos());
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", count(), meanNanos() / 1000.0,
+                    percentileNanos(50) / 1000.0, percentileNanos(99) / 1000.0, maxNanos() / 1000.0);
+        }
+    }
+
+    /**
+     * Evaluation statistics for a single expression.
+     */
+    public static final class ExpressionStats {
+        private final String expression;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        ExpressionStats(String expression) {
+            this.expression = expression;
+        }
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public String expression() {
+            return expression;
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+
+        public double meanNanos() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) totalNanos.sum() / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s count=%d mean=%.1fus max=%.1fus", expression, count(), meanNanos() / 1000.0,
+                    maxNanos() / 1000.0);
+        }
+    }
+}
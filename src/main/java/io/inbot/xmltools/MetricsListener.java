@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+/**
+ * Callback interface for instrumenting parsing and xpath evaluation. Pass an implementation to the constructors of {@link PooledXmlParser} and
+ * {@link XPathExpressionCache} and forward the events to the metrics library of your choice, or use {@link MetricsCollector}.
+ *
+ * All methods have empty default implementations, so you only need to implement what you are interested in. Implementations must be thread
+ * safe and fast; they are called on the threads doing the work. Durations are in nanoseconds.
+ */
+public interface MetricsListener {
+
+    /**
+     * Listener that ignores everything. This is the default and instrumentation is skipped entirely when it is used.
+     */
+    MetricsListener NOOP = new MetricsListener() {
+    };
+
+    /**
+     * @param nanos time spent parsing, including borrowing the document builder
+     * @param bytes number of bytes read or -1 if the input was not a byte stream
+     */
+    default void documentParsed(long nanos, long bytes) {
+    }
+
+    /**
+     * @param nanos time spent until the parse failed
+     */
+    default void parseFailed(long nanos) {
+    }
+
+    /**
+     * Called for every document builder borrowed from the pool.
+     */
+    default void documentBuilderBorrowed() {
+    }
+
+    /**
+     * Called when a borrow could not be served from the idle builders in the pool, so a new one was created.
+     *
+     * @param nanos time spent creating the builder
+     */
+    default void documentBuilderCreated(long nanos) {
+    }
+
+    /**
+     * @param expression expression that was found in the cache
+     */
+    default void expressionCacheHit(String expression) {
+    }
+
+    /**
+     * @param expression expression that was not in the cache
+     */
+    default void expressionCacheMiss(String expression) {
+    }
+
+    /**
+     * @param expression expression that was removed from the cache because of its size or because it was not used
+     */
+    default void expressionEvicted(String expression) {
+    }
+
+    /**
+     * Called for every compilation, including the extra instances compiled for concurrent evaluations of the same expression.
+     *
+     * @param expression expression
+     * @param nanos time spent compiling
+     */
+    default void expressionCompiled(String expression, long nanos) {
+    }
+
+    /**
+     * @param expression expression
+     * @param nanos time spent evaluating
+     */
+    default void expressionEvaluated(String expression, long nanos) {
+    }
+}
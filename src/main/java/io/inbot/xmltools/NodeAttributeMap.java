@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Read only map view on the attributes of an element that reads through to the DOM instead of copying. Keys are the attribute names as
+ * they appear in the document (including any prefix) and values are trimmed, like {@link XPathBrowser#nodeAttributes()}. Iteration
+ * follows the order of the DOM's {@link NamedNodeMap}.
+ */
+final class NodeAttributeMap extends AbstractMap<String, String> {
+    private final NamedNodeMap attributes;
+
+    NodeAttributeMap(Node node) {
+        this.attributes = node.getNodeType() == Node.ELEMENT_NODE ? node.getAttributes() : null;
+    }
+
+    /**
+     * Call the consumer for every attribute without allocating map entries.
+     *
+     * @param node element
+     * @param consumer receives the name and the trimmed value of each attribute
+     */
+    static void forEach(Node node, BiConsumer<? super String, ? super String> consumer) {
+        if (node.getNodeType() != Node.ELEMENT_NODE) {
+            return;
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            consumer.accept(attribute.getNodeName(), attribute.getNodeValue().trim());
+        }
+    }
+
+    @Override
+    public int size() {
+        return attributes == null ? 0 : attributes.getLength();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (attributes == null || !(key instanceof String)) {
+            return null;
+        }
+        Node attribute = attributes.getNamedItem((String) key);
+        return attribute == null ? null : attribute.getNodeValue().trim();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < size(); i++) {
+            Node attribute = attributes.item(i);
+            action.accept(attribute.getNodeName(), attribute.getNodeValue().trim());
+        }
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public int size() {
+                return NodeAttributeMap.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+                    private int i = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < size();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Node attribute = attributes.item(i++);
+                        return new SimpleImmutableEntry<>(attribute.getNodeName(), attribute.getNodeValue().trim());
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Sized spliterator over a range of a NodeList that splits the range in halves. Streams backed by it know their size, so
+ * <code>count()</code> and <code>toArray()</code> don't have to iterate, and parallel streams split evenly.
+ */
+final class NodeListSpliterator implements Spliterator<Node> {
+    private final NodeList nodes;
+    private int index;
+    private final int fence;
+
+    NodeListSpliterator(NodeList nodes) {
+        this(nodes, 0, nodes.getLength());
+    }
+
+    private NodeListSpliterator(NodeList nodes, int index, int fence) {
+        this.nodes = nodes;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    /**
+     * The node lists returned by the xpath engine move a shared cursor when you access an item, so they can't be read from multiple threads
+     * even if the document can. This copies those into a list that can.
+     *
+     * @param nodes node list
+     * @return a node list with the same nodes that may be read concurrently
+     */
+    static NodeList threadSafe(NodeList nodes) {
+        if (nodes instanceof SimpleXPathExpression.ListNodeList) {
+            return nodes;
+        }
+        int length = nodes.getLength();
+        List<Node> copy = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            copy.add(nodes.item(i));
+        }
+        return new SimpleXPathExpression.ListNodeList(copy);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Node> action) {
+        if (index < fence) {
+            action.accept(nodes.item(index++));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Node> action) {
+        for (int i = index; i < fence; i++) {
+            action.accept(nodes.item(i));
+        }
+        index = fence;
+    }
+
+    @Override
+    public Spliterator<Node> trySplit() {
+        int middle = (index + fence) >>> 1;
+        if (middle <= index) {
+            return null;
+        }
+        NodeListSpliterator prefix = new NodeListSpliterator(nodes, index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+}
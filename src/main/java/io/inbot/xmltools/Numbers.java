@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+/**
+ * Parses numbers from character data without creating trimmed copies or boxing the result. Leading and trailing characters up to and
+ * including space are ignored, just like {@link String#trim()} does for the getters of {@link XPathBrowser}.
+ */
+final class Numbers {
+
+    private Numbers() {
+    }
+
+    /**
+     * @param value characters
+     * @return true if the value is empty or only has whitespace, like {@link org.apache.commons.lang3.StringUtils#isBlank(CharSequence)}
+     */
+    static boolean isBlank(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isWhitespace(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param value characters
+     * @return the value as a long
+     * @throws NumberFormatException if the trimmed value is not a long, like {@link Long#parseLong(String)}
+     */
+    static long parseLong(CharSequence value) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            throw invalid(value);
+        }
+        int i = start;
+        boolean negative = false;
+        char first = value.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                throw invalid(value);
+            }
+        }
+        // accumulate negatively to be able to represent Long.MIN_VALUE
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplicationLimit = limit / 10;
+        long result = 0;
+        while (i < end) {
+            int digit = Character.digit(value.charAt(i++), 10);
+            if (digit < 0 || result < multiplicationLimit) {
+                throw invalid(value);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw invalid(value);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * @param value characters
+     * @return the value as an int
+     * @throws NumberFormatException if the trimmed value is not an int, like {@link Integer#parseInt(String)}
+     */
+    static int parseInt(CharSequence value) {
+        long result = parseLong(value);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            throw invalid(value);
+        }
+        return (int) result;
+    }
+
+    /**
+     * @param value characters
+     * @return the value as a double
+     * @throws NumberFormatException if the value is not a double, like {@link Double#parseDouble(String)}
+     */
+    static double parseDouble(CharSequence value) {
+        // parseDouble ignores surrounding whitespace and only copies when there is some
+        return Double.parseDouble(value.toString());
+    }
+
+    private static NumberFormatException invalid(CharSequence value) {
+        return new NumberFormatException("For input string: \"" + value.toString().trim() + "\"");
+    }
+}
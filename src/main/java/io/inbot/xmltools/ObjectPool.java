@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, lock free pool for objects that are expensive to create and not thread safe (e.g. DocumentBuilder or XPathExpression).
+ *
+ * Objects are borrowed for the duration of a single operation and returned afterwards. Unlike a cache keyed on the thread id, this works
+ * for any number of (short lived or virtual) threads: the number of instances is bounded by the peak concurrency rather than by the number
+ * of threads that ever used the pool. Borrowing and returning do not allocate; the pool is a fixed array of slots that is claimed with
+ * compare and set operations, probing from a per thread starting slot to reduce contention.
+ *
+ * When the pool is empty, borrow creates a new instance. When the pool is full, returned instances are simply dropped.
+ *
+ * @param <T> type of the pooled objects
+ */
+public final class ObjectPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final Supplier<T> factory;
+    private final Consumer<T> resetter;
+
+    /**
+     * @param size maximum number of idle instances kept in the pool
+     * @param factory creates new instances when the pool is empty
+     * @param resetter invoked on every returned instance before it goes back into the pool; if it throws, the instance is dropped
+     */
+    public ObjectPool(int size, Supplier<T> factory, Consumer<T> resetter) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size should be at least 1 but was " + size);
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.factory = factory;
+        this.resetter = resetter;
+    }
+
+    /**
+     * @return an idle instance from the pool or a newly created one. The caller has exclusive use of it until it calls {@link #release(Object)}.
+     */
+    public T borrow() {
+        int size = slots.length();
+        int start = startSlot(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            T candidate = slots.get(slot);
+            if (candidate != null && slots.compareAndSet(slot, candidate, null)) {
+                return candidate;
+            }
+        }
+        return factory.get();
+    }
+
+    /**
+     * Return an instance to the pool. Do not use the instance after calling this.
+     *
+     * @param instance a previously borrowed instance
+     */
+    public void release(T instance) {
+        if (instance == null) {
+            return;
+        }
+        try {
+            resetter.accept(instance);
+        } catch (RuntimeException e) {
+            // can't reuse it
+            return;
+        }
+        int size = slots.length();
+        int start = startSlot(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, instance)) {
+                return;
+            }
+        }
+        // pool is full; let the garbage collector have it
+    }
+
+    /**
+     * @return the number of idle instances currently in the pool
+     */
+    public int idle() {
+        int idle = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * @return maximum number of idle instances
+     */
+    public int size() {
+        return slots.length();
+    }
+
+    private static int startSlot(int size) {
+        // spread consecutive thread ids over the slots
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) ((id >>> 33) % size);
+    }
+}
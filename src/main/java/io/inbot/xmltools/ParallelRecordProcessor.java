@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Processes the records of a large document on multiple threads. The calling thread splits the input into records (see
+ * {@link XpathBrowserFactory#browseRecords(InputStream, Charset, String)}) and hands them to an executor that applies your function.
+ * The results are passed to a sink, which is always called on the calling thread, either in document order or in completion order.
+ *
+ * The number of records that are in flight (submitted but not yet passed to the sink) is bounded, so a slow function or sink slows down
+ * the reading rather than piling up records in memory. Each record is a separate DOM that is only used by one worker at a time; workers
+ * share the thread safe parser and expression pools.
+ *
+ * Any executor works. On Java 21 and later you can use a virtual thread per task executor.
+ *
+ * <pre>
+ * ParallelRecordProcessor processor = new ParallelRecordProcessor(xpbf, executor, 1000, true);
+ * long count = processor.process(inputStream, StandardCharsets.UTF_8, "/feed/item", item -&gt; item.getString("name"), names::add);
+ * </pre>
+ */
+public class ParallelRecordProcessor {
+
+    private final XpathBrowserFactory factory;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final boolean ordered;
+
+    /**
+     * @param factory factory used for splitting the input
+     * @param executor executor that runs the function for each record
+     * @param maxInFlight maximum number of records that are submitted but not yet passed to the sink
+     * @param ordered if true, the sink gets the results in document order; otherwise in completion order
+     */
+    public ParallelRecordProcessor(XpathBrowserFactory factory, Executor executor, int maxInFlight, boolean ordered) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight should be at least 1 but was " + maxInFlight);
+        }
+        this.factory = factory;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+    }
+
+    /**
+     * @param is input
+     * @param encoding encoding of the input
+     * @param recordPath simple path selecting the record elements, e.g. /feed/item
+     * @param function applied to each record on one of the executor's threads
+     * @param sink gets the results on the calling thread
+     * @param <T> result type
+     * @return the number of processed records
+     */
+    public <T> long process(InputStream is, Charset encoding, String recordPath, Function<XPathBrowser, ? extends T> function, Consumer<? super T> sink) {
+        try (Stream<XPathBrowser> records = factory.browseRecords(is, encoding, recordPath)) {
+            return process(records, function, sink);
+        }
+    }
+
+    /**
+     * @param r input
+     * @param recordPath simple path selecting the record elements, e.g. /feed/item
+     * @param function applied to each record on one of the executor's threads
+     * @param sink gets the results on the calling thread
+     * @param <T> result type
+     * @return the number of processed records
+     */
+    public <T> long process(Reader r, String recordPath, Function<XPathBrowser, ? extends T> function, Consumer<? super T> sink) {
+        try (Stream<XPathBrowser> records = factory.browseRecords(r, recordPath)) {
+            return process(records, function, sink);
+        }
+    }
+
+    /**
+     * Process records from any stream of browsers. The stream is consumed on the calling thread. Each browser should be safe to use from
+     * another thread, which is the case for the browsers produced by browseRecords.
+     *
+     * @param records records
+     * @param function applied to each record on one of the executor's threads
+     * @param sink gets the results on the calling thread
+     * @param <T> result type
+     * @return the number of processed records
+     */
+    public <T> long process(Stream<XPathBrowser> records, Function<XPathBrowser, ? extends T> function, Consumer<? super T> sink) {
+        if (ordered) {
+            return processOrdered(records.iterator(), function, sink);
+        } else {
+            return processUnordered(records.iterator(), function, sink);
+        }
+    }
+
+    private <T> long processOrdered(Iterator<XPathBrowser> records, Function<XPathBrowser, ? extends T> function, Consumer<? super T> sink) {
+        ArrayDeque<CompletableFuture<T>> pending = new ArrayDeque<>();
+        long count = 0;
+        try {
+            while (records.hasNext()) {
+                XPathBrowser record = records.next();
+                while (pending.size() >= maxInFlight) {
+                    sink.accept(join(pending.poll()));
+                }
+                pending.add(CompletableFuture.supplyAsync(() -> function.apply(record), executor));
+                count++;
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    sink.accept(join(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                sink.accept(join(pending.poll()));
+            }
+        } finally {
+            // only does something if we failed; stops records that have not started yet
+            pending.forEach(f -> f.cancel(false));
+        }
+        return count;
+    }
+
+    private <T> long processUnordered(Iterator<XPathBrowser> records, Function<XPathBrowser, ? extends T> function, Consumer<? super T> sink) {
+        BlockingQueue<CompletableFuture<T>> completed = new LinkedBlockingQueue<>();
+        // only the futures that are still running, for cancelling them on failure
+        Set<CompletableFuture<T>> running = ConcurrentHashMap.newKeySet();
+        int inFlight = 0;
+        long count = 0;
+        boolean done = false;
+        try {
+            while (records.hasNext()) {
+                XPathBrowser record = records.next();
+                while (inFlight >= maxInFlight) {
+                    sink.accept(join(take(completed)));
+                    inFlight--;
+                }
+                CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> function.apply(record), executor);
+                running.add(future);
+                future.whenComplete((result, e) -> {
+                    running.remove(future);
+                    completed.add(future);
+                });
+                inFlight++;
+                count++;
+                CompletableFuture<T> next;
+                while ((next = completed.poll()) != null) {
+                    sink.accept(join(next));
+                    inFlight--;
+                }
+            }
+            while (inFlight > 0) {
+                sink.accept(join(take(completed)));
+                inFlight--;
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                running.forEach(f -> f.cancel(false));
+            }
+        }
+        return count;
+    }
+
+    private static <T> CompletableFuture<T> take(BlockingQueue<CompletableFuture<T>> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw RethrownException.rethrow(e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw RethrownException.rethrow(cause);
+            }
+        }
+    }
+}
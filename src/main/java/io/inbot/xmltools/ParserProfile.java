@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.util.function.Supplier;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Named DocumentBuilderFactory configurations for {@link PooledXmlParser}. Except for {@link #DEFAULT}, all profiles
+ * turn on secure processing and turn off loading of external DTDs and external entities, so parsing with them never
+ * blocks on a network fetch. Documents are always parsed without namespace support, which is what {@link XPathBrowser}
+ * expects.
+ *
+ * The profiles differ in how the DOM is built. A deferred DOM only creates node objects when they are accessed, which
+ * is fastest when you read a few fields from a document. An eager DOM is built in one go, which is faster and uses less
+ * memory when you read most of the document, e.g. a document that is cached or frozen for concurrent reads. See
+ * ParserProfileBenchmark in the benchmarks module.
+ */
+public enum ParserProfile {
+    /**
+     * The JDK defaults with validation turned off. DTDs referenced from the document are loaded. This is what the
+     * {@link PooledXmlParser#PooledXmlParser(int, int)} constructor uses.
+     */
+    DEFAULT(true, true, false, false, false),
+    /**
+     * For xml from untrusted sources: documents with a DOCTYPE are rejected, which rules out XXE and entity expansion attacks. Uses a
+     * deferred DOM.
+     */
+    FAST_UNTRUSTED(false, false, true, false, false),
+    /**
+     * For xml you control: DOCTYPEs and internal entities are allowed but external DTDs and entities are not loaded. Uses a deferred DOM.
+     */
+    FAST_TRUSTED(true, false, true, false, false),
+    /**
+     * Like {@link #FAST_UNTRUSTED} but builds an eager DOM without comments and with CDATA sections merged into the surrounding text, which
+     * gives the smallest fully expanded documents.
+     */
+    LOW_MEMORY(false, false, false, true, true);
+
+    private final boolean allowDoctype;
+    private final boolean loadExternal;
+    private final boolean deferNodeExpansion;
+    private final boolean ignoreComments;
+    private final boolean coalescing;
+
+    private ParserProfile(boolean allowDoctype, boolean loadExternal, boolean deferNodeExpansion, boolean ignoreComments, boolean coalescing) {
+        this.allowDoctype = allowDoctype;
+        this.loadExternal = loadExternal;
+        this.deferNodeExpansion = deferNodeExpansion;
+        this.ignoreComments = ignoreComments;
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * @return a new factory configured for this profile
+     * @throws IllegalStateException if the JAXP implementation does not support one of the security features of the profile
+     */
+    public DocumentBuilderFactory newDocumentBuilderFactory() {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setValidating(false);
+        dbf.setNamespaceAware(false);
+        if (this == DEFAULT) {
+            return dbf;
+        }
+        dbf.setXIncludeAware(false);
+        dbf.setIgnoringComments(ignoreComments);
+        dbf.setCoalescing(coalescing);
+        setFeature(dbf, XMLConstants.FEATURE_SECURE_PROCESSING, true, true);
+        setFeature(dbf, "http://apache.org/xml/features/disallow-doctype-decl", !allowDoctype, true);
+        setFeature(dbf, "http://apache.org/xml/features/nonvalidating/load-external-dtd", loadExternal, true);
+        setFeature(dbf, "http://xml.org/sax/features/external-general-entities", loadExternal, true);
+        setFeature(dbf, "http://xml.org/sax/features/external-parameter-entities", loadExternal, true);
+        // xerces specific; other implementations simply build their usual DOM
+        setFeature(dbf, "http://apache.org/xml/features/dom/defer-node-expansion", deferNodeExpansion, false);
+        return dbf;
+    }
+
+    /**
+     * @return supplier of document builders for {@link PooledXmlParser} that shares a single factory
+     */
+    public Supplier<DocumentBuilder> documentBuilderSupplier() {
+        DocumentBuilderFactory dbf = newDocumentBuilderFactory();
+        return () -> {
+            // factories are not thread safe and the pool may create builders from any thread
+            synchronized (dbf) {
+                try {
+                    return dbf.newDocumentBuilder();
+                } catch (ParserConfigurationException e) {
+                    throw RethrownException.rethrow(e);
+                }
+            }
+        };
+    }
+
+    private static void setFeature(DocumentBuilderFactory dbf, String feature, boolean value, boolean required) {
+        try {
+            dbf.setFeature(feature, value);
+        } catch (ParserConfigurationException e) {
+            if (required) {
+                throw new IllegalStateException("xml parser does not support " + feature, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * {@link CompiledXPath} that borrows an {@link XPathExpression} from a small pool for each evaluation. The expression is compiled once
+ * up front; additional instances are only compiled when several threads evaluate it at the same time.
+ */
+final class PooledXPathExpression implements CompiledXPath {
+
+    private final String expression;
+    private final ObjectPool<XPathExpression> instances;
+
+    PooledXPathExpression(XPathExpressionCache cache, String expression, int maxIdleInstances) throws XPathExpressionException {
+        this.expression = expression;
+        XPathExpression first = cache.compile(expression);
+        instances = new ObjectPool<>(maxIdleInstances, () -> {
+            try {
+                return cache.compile(expression);
+            } catch (XPathExpressionException e) {
+                // we compiled it before, so this is not supposed to happen
+                throw RethrownException.rethrow(e);
+            }
+        }, e -> {
+        });
+        instances.release(first);
+    }
+
+    @Override
+    public String expression() {
+        return expression;
+    }
+
+    @Override
+    public Object evaluate(Object item, QName returnType) {
+        XPathExpression xPathExpression = instances.borrow();
+        try {
+            return xPathExpression.evaluate(item, returnType);
+        } catch (XPathExpressionException e) {
+            throw RethrownException.rethrow(e);
+        } finally {
+            instances.release(xPathExpression);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
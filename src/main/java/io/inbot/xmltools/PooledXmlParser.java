@@ -21,9 +21,7 @@
  */
 package io.inbot.xmltools;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.io.CountingInputStream;
 import io.inbot.xmltools.exceptions.RethrownException;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -31,78 +29,258 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutionException;
+import java.nio.file.Path;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
- * Helper class for parsing xml documents in a way that reuses document builders. Uses a configurable cache for document builders.
+ * Helper class for parsing xml documents in a way that reuses document builders. Uses a bounded pool of document builders.
  *
- * DocumentBuilder is NOT thread safe and creating them is somewhat expensive. So this helper class puts them in a nice guava class
- * and uses the thread id as the key. So each thread gets its own DocumentBuilder.
+ * DocumentBuilder is NOT thread safe and creating them is somewhat expensive. So this helper class keeps them in an {@link ObjectPool}. Each
+ * parse borrows a builder, parses and returns the builder to the pool after calling {@link DocumentBuilder#reset()} on it. This works for any
+ * number of threads, including virtual threads: the number of builders is bounded by the number of concurrent parses, not the number of threads.
+ *
+ * Note. Because builders are reset when they are returned, any configuration should be done on the DocumentBuilderFactory rather than on the
+ * DocumentBuilder produced by your supplier. {@link ParserProfile} has ready made configurations; the default constructor uses
+ * {@link ParserProfile#DEFAULT}, which loads external DTDs.
  */
 public class PooledXmlParser {
 
-    private LoadingCache<Long, DocumentBuilder> documentBuilderPool;
+    private final ObjectPool<DocumentBuilder> documentBuilderPool;
+
+    private final ThreadLocal<DocumentBuilder> threadDocumentBuilders;
+
+    private final MetricsListener metrics;
 
+    /**
+     * @param threads maximum number of idle document builders kept in the pool. Use the number of threads that typically parse concurrently.
+     * @param expirationMinutes not used; pooled builders are kept for the lifetime of the parser.
+     */
     public PooledXmlParser(int threads, int expirationMinutes) {
-        this(threads,expirationMinutes, () -> {
-            try {
-                DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-                dbf.setValidating(false);
-                DocumentBuilder builder = dbf.newDocumentBuilder();
-                return builder;
-            } catch (ParserConfigurationException e) {
-                throw RethrownException.rethrow(e);
-            }
-        });
+        this(threads, expirationMinutes, ParserProfile.DEFAULT.documentBuilderSupplier());
+    }
+
+    /**
+     * @param threads maximum number of idle document builders kept in the pool. Use the number of threads that typically parse concurrently.
+     * @param profile configuration of the document builders, e.g. {@link ParserProfile#FAST_UNTRUSTED}
+     */
+    public PooledXmlParser(int threads, ParserProfile profile) {
+        this(threads, profile, MetricsListener.NOOP);
     }
 
+    /**
+     * @param threads maximum number of idle document builders kept in the pool. Use the number of threads that typically parse concurrently.
+     * @param profile configuration of the document builders, e.g. {@link ParserProfile#FAST_UNTRUSTED}
+     * @param metrics listener for parse and pool events
+     */
+    public PooledXmlParser(int threads, ParserProfile profile, MetricsListener metrics) {
+        this(threads, 0, profile.documentBuilderSupplier(), metrics);
+    }
+
+    /**
+     * @param threads maximum number of idle document builders kept in the pool. Use the number of threads that typically parse concurrently.
+     * @param expirationMinutes not used; pooled builders are kept for the lifetime of the parser.
+     * @param dbSupplier supplier for new document builders
+     */
     public PooledXmlParser(int threads, int expirationMinutes, Supplier<DocumentBuilder> dbSupplier) {
-        // per thread cache of document builders
-        documentBuilderPool = CacheBuilder.newBuilder()
-            .maximumSize(threads)
-            .build(new CacheLoader<Long, DocumentBuilder>() {
-                @Override
-                public DocumentBuilder load(Long id) throws Exception {
-                    return dbSupplier.get();
-                }
-            }
-        );
+        this(threads, expirationMinutes, dbSupplier, MetricsListener.NOOP);
+    }
+
+    /**
+     * @param threads maximum number of idle document builders kept in the pool. Use the number of threads that typically parse concurrently.
+     * @param expirationMinutes not used; pooled builders are kept for the lifetime of the parser.
+     * @param dbSupplier supplier for new document builders
+     * @param metrics listener for parse and pool events
+     */
+    public PooledXmlParser(int threads, int expirationMinutes, Supplier<DocumentBuilder> dbSupplier, MetricsListener metrics) {
+        this.metrics = metrics;
+        Supplier<DocumentBuilder> factory;
+        if (metrics == MetricsListener.NOOP) {
+            factory = dbSupplier;
+        } else {
+            factory = () -> {
+                long start = System.nanoTime();
+                DocumentBuilder builder = dbSupplier.get();
+                metrics.documentBuilderCreated(System.nanoTime() - start);
+                return builder;
+            };
+        }
+        documentBuilderPool = new ObjectPool<>(threads, factory, DocumentBuilder::reset);
+        threadDocumentBuilders = ThreadLocal.withInitial(factory);
     }
 
     public Document parseXml(final Reader r) {
         return parse(new InputSource(r));
     }
 
-	public Document parseXml(final InputStream inputStream, final Charset encoding)  {
-	    return parseXml(new BufferedReader(new InputStreamReader(inputStream, encoding)));
-	}
+    /**
+     * Parse a byte stream and let the parser detect the encoding from the byte order mark or xml declaration, as the xml spec intends.
+     *
+     * @param inputStream xml bytes
+     * @return the document
+     */
+    public Document parseXml(final InputStream inputStream) {
+        return parseBytes(inputStream, null, -1);
+    }
+
+    /**
+     * @param inputStream xml bytes
+     * @param encoding encoding of the bytes; overrides whatever the document declares. Malformed input is replaced with U+FFFD rather than
+     *            rejected.
+     * @return the document
+     */
+    public Document parseXml(final InputStream inputStream, final Charset encoding) {
+        return parseBytes(inputStream, encoding, -1);
+    }
+
+    /**
+     * @param bytes xml bytes; the encoding is detected by the parser
+     * @return the document
+     */
+    public Document parseXml(final byte[] bytes) {
+        return parseXml(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse part of a byte array without copying it.
+     *
+     * @param bytes buffer
+     * @param offset offset of the xml in the buffer
+     * @param length number of bytes
+     * @return the document
+     */
+    public Document parseXml(final byte[] bytes, int offset, int length) {
+        return parseBytes(new ByteArrayInputStream(bytes, offset, length), null, length);
+    }
+
+    /**
+     * Parse the remaining bytes of a heap or direct buffer without copying them to an intermediate array first. The position of the buffer is
+     * not changed.
+     *
+     * @param buffer buffer
+     * @return the document
+     */
+    public Document parseXml(final ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return parseXml(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            return parseBytes(new ByteBufferInputStream(buffer.duplicate()), null, buffer.remaining());
+        }
+    }
+
+    /**
+     * Parse a local file by memory mapping it. The bytes are read straight from the page cache instead of being copied through heap buffers
+     * first, which matters for large files. The encoding is detected by the parser.
+     *
+     * @param file xml file
+     * @return the document
+     */
+    public Document parseXml(final Path file) {
+        try (MappedFileInputStream inputStream = new MappedFileInputStream(file)) {
+            return parseBytes(inputStream, null, inputStream.size());
+        } catch (IOException e) {
+            throw RethrownException.rethrow(e);
+        }
+    }
+
+    /**
+     * Parse characters, e.g. a StringBuilder, without converting them to a String or bytes first.
+     *
+     * @param xml xml
+     * @return the document
+     */
+    public Document parseXml(final CharSequence xml) {
+        return parseXml(xml instanceof String ? new StringReader((String) xml) : new CharSequenceReader(xml));
+    }
 
     public Document parseXml(final String xmlBuffer) {
-			return parseXml(new ByteArrayInputStream(xmlBuffer.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        return parseXml(new StringReader(xmlBuffer));
+    }
+
+    private Document parseBytes(InputStream inputStream, Charset encoding, long length) {
+        InputStream in = inputStream;
+        LongSupplier bytesRead;
+        if (length >= 0 || metrics == MetricsListener.NOOP) {
+            bytesRead = () -> length;
+        } else {
+            CountingInputStream countingInputStream = new CountingInputStream(inputStream);
+            in = countingInputStream;
+            bytesRead = countingInputStream::getCount;
+        }
+        if (encoding != null) {
+            // decode ourselves so malformed input is replaced with U+FFFD like it always was instead of failing in the parser
+            return parse(new InputSource(new BufferedReader(new InputStreamReader(in, encoding))), bytesRead);
+        }
+        return parse(new InputSource(in), bytesRead);
     }
 
     public Document parse(final InputSource inputSource) {
+        return parse(inputSource, () -> -1);
+    }
+
+    private Document parse(final InputSource inputSource, LongSupplier bytesRead) {
+        long start = System.nanoTime();
+        DocumentBuilder documentBuilder = borrowDocumentBuilder();
         try {
-            return getDocumentBuilderForCurrentThread().parse(inputSource);
+            return parse(documentBuilder, inputSource, start, bytesRead);
+        } finally {
+            returnDocumentBuilder(documentBuilder);
+        }
+    }
+
+    /**
+     * Parse with a builder that the caller borrowed, e.g. to parse a batch of documents with a single builder.
+     */
+    Document parse(DocumentBuilder documentBuilder, final InputSource inputSource, long bytes) {
+        return parse(documentBuilder, inputSource, System.nanoTime(), () -> bytes);
+    }
+
+    private Document parse(DocumentBuilder documentBuilder, final InputSource inputSource, long start, LongSupplier bytesRead) {
+        try {
+            Document document = documentBuilder.parse(inputSource);
+            metrics.documentParsed(System.nanoTime() - start, bytesRead.getAsLong());
+            return document;
         } catch (SAXException | IOException e) {
+            metrics.parseFailed(System.nanoTime() - start);
             throw RethrownException.rethrow(e);
         }
     }
 
+    /**
+     * Borrow a document builder from the pool. You have exclusive use of the builder until you return it with
+     * {@link #returnDocumentBuilder(DocumentBuilder)}. Use a try finally block.
+     *
+     * @return a document builder
+     */
+    public DocumentBuilder borrowDocumentBuilder() {
+        metrics.documentBuilderBorrowed();
+        return documentBuilderPool.borrow();
+    }
+
+    /**
+     * Return a builder obtained via {@link #borrowDocumentBuilder()} to the pool.
+     *
+     * @param documentBuilder builder
+     */
+    public void returnDocumentBuilder(DocumentBuilder documentBuilder) {
+        documentBuilderPool.release(documentBuilder);
+    }
+
+    /**
+     * @return the document builder of the calling thread; repeated calls on the same thread return the same builder. These builders live
+     *         outside the pool and are never used by the parse methods.
+     * @deprecated the parse methods no longer use per thread builders; use {@link #borrowDocumentBuilder()} and
+     *             {@link #returnDocumentBuilder(DocumentBuilder)} or one of the parse methods instead.
+     */
+    @Deprecated
     public DocumentBuilder getDocumentBuilderForCurrentThread()  {
-        try {
-            return documentBuilderPool.get(Thread.currentThread().getId());
-        } catch (ExecutionException e) {
-            throw RethrownException.rethrow(e.getCause());
-        }
+        return threadDocumentBuilders.get();
     }
 }
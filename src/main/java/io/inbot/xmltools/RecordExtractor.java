@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.SimplePath.Step;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import javax.xml.xpath.XPathConstants;
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Extracts many fields from a node in one call. Use this instead of calling the getters of {@link XPathBrowser} for each field of each
+ * record.
+ *
+ * The fields are compiled once when you define them. Fields with simple relative paths (child steps ending in an element,
+ * <code>@attribute</code> or <code>text()</code>, e.g. <code>price</code>, <code>@id</code> or <code>offer/price</code>) are merged into a
+ * tree on their common prefixes that is evaluated with a single walk over the DOM. Other expressions are evaluated with the xpath engine,
+ * but without the per call cache lookup.
+ *
+ * Instances are immutable and thread safe; {@link #field(String, FieldType, BiConsumer)} returns a new extractor.
+ *
+ * <pre>
+ * RecordExtractor&lt;Product&gt; extractor = new RecordExtractor&lt;Product&gt;(cache)
+ *     .field("@id", FieldType.LONG, Product::setId)
+ *     .field("name", FieldType.STRING, Product::setName)
+ *     .field("offer/price", FieldType.DOUBLE, Product::setPrice);
+ * List&lt;Product&gt; products = browser.streamMatching("/feed/item").map(item -&gt; extractor.extract(item, new Product())).collect(...);
+ * </pre>
+ *
+ * @param <T> the type of the object that is filled with the values.
+ */
+public class RecordExtractor<T> {
+
+    private static final class Field<T, V> {
+        final String expression;
+        final FieldType<V> type;
+        final BiConsumer<? super T, ? super V> setter;
+
+        Field(String expression, FieldType<V> type, BiConsumer<? super T, ? super V> setter) {
+            this.expression = expression;
+            this.type = type;
+            this.setter = setter;
+        }
+
+        @SuppressWarnings("unchecked")
+        void apply(T target, Object raw) {
+            if (type.isMultiValued()) {
+                List<String> values = raw == null ? Collections.<String>emptyList() : (List<String>) raw;
+                String[] array = new String[values.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = values.get(i).trim();
+                }
+                setter.accept(target, (V) array);
+            } else if (raw != null) {
+                String value = ((String) raw).trim();
+                if (StringUtils.isNotBlank(value)) {
+                    setter.accept(target, type.convert(value));
+                }
+            }
+        }
+    }
+
+    private static final class PathNode {
+        final Map<String, PathNode> children = new LinkedHashMap<>();
+        final List<Integer> valueFields = new ArrayList<>();
+        final Map<String, List<Integer>> attributeFields = new LinkedHashMap<>();
+        final List<Integer> textFields = new ArrayList<>();
+        // single valued fields in this sub tree; once those have values and there are no multi valued fields, we can skip the sub tree
+        final List<Integer> singleValuedFieldsInSubTree = new ArrayList<>();
+        boolean multiValuedInSubTree = false;
+    }
+
+    private final XPathExpressionCache cache;
+    private final List<Field<T, ?>> fields;
+    private final PathNode root = new PathNode();
+    private final Map<Integer, CompiledXPath> xpathFields = new LinkedHashMap<>();
+
+    /**
+     * @param cache cache used for compiling expressions that can't be evaluated directly.
+     */
+    public RecordExtractor(XPathExpressionCache cache) {
+        this(cache, Collections.<Field<T, ?>>emptyList());
+    }
+
+    private RecordExtractor(XPathExpressionCache cache, List<Field<T, ?>> fields) {
+        this.cache = cache;
+        this.fields = Collections.unmodifiableList(fields);
+        for (int i = 0; i < fields.size(); i++) {
+            plan(i, fields.get(i));
+        }
+    }
+
+    /**
+     * Extractor that puts the trimmed, non blank string values for the given fields in a map.
+     *
+     * @param cache expression cache
+     * @param fieldExpressions map of field name to expression
+     * @return an extractor that fills maps
+     */
+    public static RecordExtractor<Map<String, Object>> forMap(XPathExpressionCache cache, Map<String, String> fieldExpressions) {
+        RecordExtractor<Map<String, Object>> extractor = new RecordExtractor<>(cache);
+        for (Map.Entry<String, String> entry : fieldExpressions.entrySet()) {
+            String name = entry.getKey();
+            extractor = extractor.field(entry.getValue(), FieldType.STRING, (map, value) -> map.put(name, value));
+        }
+        return extractor;
+    }
+
+    /**
+     * @param expression xpath expression relative to the record node
+     * @param type type of the field
+     * @param setter called with the converted value; not called when the value is absent or blank, except for
+     *        {@link FieldType#STRING_VALUES}, which always gets an array.
+     * @param <V> java type of the field
+     * @return a new extractor with the additional field
+     */
+    public <V> RecordExtractor<T> field(String expression, FieldType<V> type, BiConsumer<? super T, ? super V> setter) {
+        List<Field<T, ?>> newFields = new ArrayList<>(fields);
+        newFields.add(new Field<>(expression, type, setter));
+        return new RecordExtractor<>(cache, newFields);
+    }
+
+    private void plan(int index, Field<T, ?> field) {
+        Optional<SimplePath> parsed = SimplePath.tryParse(field.expression);
+        if (parsed.isPresent() && !parsed.get().isAbsolute() && parsed.get().isChildPath()) {
+            SimplePath path = parsed.get();
+            boolean multiValued = field.type.isMultiValued();
+            PathNode node = root;
+            markSubTree(node, index, multiValued);
+            for (Step step : path.steps()) {
+                if (step.name == null) {
+                    // wildcards would need a different tree structure; let the xpath engine do those
+                    xpathFields.put(index, cache.get(field.expression));
+                    return;
+                }
+            }
+            for (Step step : path.steps()) {
+                node = node.children.computeIfAbsent(step.name, name -> new PathNode());
+                markSubTree(node, index, multiValued);
+            }
+            if (path.attribute() != null) {
+                node.attributeFields.computeIfAbsent(path.attribute(), name -> new ArrayList<>()).add(index);
+            } else if (path.isText()) {
+                node.textFields.add(index);
+            } else {
+                node.valueFields.add(index);
+            }
+        } else {
+            xpathFields.put(index, cache.get(field.expression));
+        }
+    }
+
+    private static void markSubTree(PathNode node, int index, boolean multiValued) {
+        if (multiValued) {
+            node.multiValuedInSubTree = true;
+        } else {
+            node.singleValuedFieldsInSubTree.add(index);
+        }
+    }
+
+    /**
+     * @param browser browser positioned on the record
+     * @param target object that gets the values
+     * @return the target
+     */
+    public T extract(XPathBrowser browser, T target) {
+        return extract(browser.node(), target);
+    }
+
+    /**
+     * @param node record node
+     * @param target object that gets the values
+     * @return the target
+     */
+    public T extract(Node node, T target) {
+        Object[] raw = new Object[fields.size()];
+        if (!root.children.isEmpty() || !root.valueFields.isEmpty() || !root.attributeFields.isEmpty() || !root.textFields.isEmpty()) {
+            walk(root, node, raw);
+        }
+        for (Map.Entry<Integer, CompiledXPath> entry : xpathFields.entrySet()) {
+            int index = entry.getKey();
+            if (fields.get(index).type.isMultiValued()) {
+                NodeList nodeList = (NodeList) entry.getValue().evaluate(node, XPathConstants.NODESET);
+                List<String> values = new ArrayList<>(nodeList.getLength());
+                for (int i = 0; i < nodeList.getLength(); i++) {
+                    values.add(DomSupport.stringValue(nodeList.item(i)));
+                }
+                raw[index] = values;
+            } else {
+                raw[index] = entry.getValue().evaluate(node, XPathConstants.STRING);
+            }
+        }
+        for (int i = 0; i < raw.length; i++) {
+            fields.get(i).apply(target, raw[i]);
+        }
+        return target;
+    }
+
+    private void walk(PathNode pathNode, Node node, Object[] raw) {
+        for (int index : pathNode.valueFields) {
+            record(raw, index, DomSupport.stringValue(node));
+        }
+        for (Map.Entry<String, List<Integer>> entry : pathNode.attributeFields.entrySet()) {
+            Attr attr = DomSupport.attribute(node, entry.getKey());
+            if (attr != null) {
+                for (int index : entry.getValue()) {
+                    record(raw, index, attr.getValue());
+                }
+            }
+        }
+        if (!pathNode.textFields.isEmpty()) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (DomSupport.isText(child)) {
+                    String text = DomSupport.mergedText(child);
+                    for (int index : pathNode.textFields) {
+                        record(raw, index, text);
+                    }
+                    while (child.getNextSibling() != null && DomSupport.isText(child.getNextSibling())) {
+                        child = child.getNextSibling();
+                    }
+                }
+            }
+        }
+        if (!pathNode.children.isEmpty()) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    String name = DomSupport.matchableName(child);
+                    PathNode childPathNode = name == null ? null : pathNode.children.get(name);
+                    if (childPathNode != null && !satisfied(childPathNode, raw)) {
+                        walk(childPathNode, child, raw);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean satisfied(PathNode pathNode, Object[] raw) {
+        if (pathNode.multiValuedInSubTree) {
+            return false;
+        }
+        for (int index : pathNode.singleValuedFieldsInSubTree) {
+            if (raw[index] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void record(Object[] raw, int index, String value) {
+        if (fields.get(index).type.isMultiValued()) {
+            List<String> values = (List<String>) raw[index];
+            if (values == null) {
+                values = new ArrayList<>();
+                raw[index] = values;
+            }
+            values.add(value);
+        } else if (raw[index] == null) {
+            // xpath uses the first node in document order
+            raw[index] = value;
+        }
+    }
+}
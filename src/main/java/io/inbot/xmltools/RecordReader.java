@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.Closeable;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Splits a StAX stream into records: for every element that matches the record path, a small stand alone DOM document is built with
+ * that element as the document element. Everything outside the records is skipped, so memory use is bounded by the largest record.
+ *
+ * Records nested in other records are part of the outer record and are not reported separately. Nodes are created without namespace
+ * support, just like the default {@link PooledXmlParser} does, so namespace declarations end up as attributes.
+ */
+final class RecordReader implements Closeable {
+
+    private final XMLStreamReader reader;
+    private final StreamingPathMatcher matcher;
+    private final PooledXmlParser parser;
+    private DocumentBuilder documentBuilder;
+    private boolean closed = false;
+
+    RecordReader(XMLStreamReader reader, SimplePath recordPath, PooledXmlParser parser) {
+        if (recordPath.attribute() != null || recordPath.isText()) {
+            throw new IllegalArgumentException("record path should select elements: " + recordPath);
+        }
+        this.reader = reader;
+        this.matcher = new StreamingPathMatcher(recordPath);
+        this.parser = parser;
+        this.documentBuilder = parser.borrowDocumentBuilder();
+    }
+
+    /**
+     * @return the next record or null if there are no more records. The reader is closed after the last record.
+     */
+    Document next() {
+        if (closed) {
+            return null;
+        }
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    matcher.startElement(reader);
+                    if (matcher.matches(0)) {
+                        Document document = documentBuilder.newDocument();
+                        document.appendChild(readElement(document));
+                        matcher.endElement();
+                        return document;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    matcher.endElement();
+                }
+            }
+        } catch (XMLStreamException e) {
+            close();
+            throw RethrownException.rethrow(e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        close();
+        return null;
+    }
+
+    /**
+     * Builds the element the reader is positioned on, consuming events up to and including its END_ELEMENT.
+     */
+    private Element readElement(Document document) throws XMLStreamException {
+        Element root = createElement(document);
+        Node current = root;
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element element = createElement(document);
+                current.appendChild(element);
+                current = element;
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                current = current.getParentNode();
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                current.appendChild(document.createTextNode(reader.getText()));
+                break;
+            case XMLStreamConstants.COMMENT:
+                current.appendChild(document.createComment(reader.getText()));
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                current.appendChild(document.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                break;
+            default:
+                break;
+            }
+        }
+        return root;
+    }
+
+    private Element createElement(Document document) {
+        Element element = document.createElement(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            element.setAttribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttribute(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            StaxSupport.closeQuietly(reader);
+            parser.returnDocumentBuilder(documentBuilder);
+            documentBuilder = null;
+        }
+    }
+}
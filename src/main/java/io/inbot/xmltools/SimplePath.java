@@ -0,0 +1,321 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Parsed form of the simple subset of xpath that can be evaluated without the full xpath engine, e.g. while streaming.
+ *
+ * Supported are absolute and relative location paths consisting of child (<code>/</code>) and descendant (<code>//</code>) steps with
+ * element names or <code>*</code>, optionally ending in an attribute (<code>@name</code>) or <code>text()</code>. Steps can have
+ * predicates: a position (<code>item[2]</code>, only as the first predicate), attribute existence (<code>item[@id]</code>) and attribute
+ * equality (<code>item[@type='x']</code>). A leading <code>./</code> and <code>.</code> by itself are allowed for relative paths.
+ *
+ * Names are matched on the local name; namespace prefixes are not supported.
+ */
+final class SimplePath {
+
+    static final class AttributePredicate {
+        final String name;
+        // null means the attribute only needs to be present
+        final String value;
+
+        AttributePredicate(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        boolean matches(String attributeValue) {
+            return attributeValue != null && (value == null || value.equals(attributeValue));
+        }
+    }
+
+    static final class Step {
+        final boolean descendant;
+        // null means any element
+        final String name;
+        // 1 based, 0 means no position predicate
+        final int position;
+        final List<AttributePredicate> attributePredicates;
+
+        Step(boolean descendant, String name, int position, List<AttributePredicate> attributePredicates) {
+            this.descendant = descendant;
+            this.name = name;
+            this.position = position;
+            this.attributePredicates = attributePredicates;
+        }
+
+        boolean matchesName(String localName) {
+            return name == null || name.equals(localName);
+        }
+
+        boolean hasPredicates() {
+            return position > 0 || !attributePredicates.isEmpty();
+        }
+    }
+
+    private final String expression;
+    private final boolean absolute;
+    private final List<Step> steps;
+    private final String attribute;
+    private final boolean text;
+
+    private SimplePath(String expression, boolean absolute, List<Step> steps, String attribute, boolean text) {
+        this.expression = expression;
+        this.absolute = absolute;
+        this.steps = Collections.unmodifiableList(steps);
+        this.attribute = attribute;
+        this.text = text;
+    }
+
+    /**
+     * @param expression expression
+     * @return the parsed path
+     * @throws IllegalArgumentException if the expression is not in the supported subset
+     */
+    static SimplePath parse(String expression) {
+        return new Parser(expression).parse();
+    }
+
+    /**
+     * @param expression expression
+     * @return the parsed path or empty if the expression is not in the supported subset
+     */
+    static Optional<SimplePath> tryParse(String expression) {
+        try {
+            return Optional.of(parse(expression));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    String expression() {
+        return expression;
+    }
+
+    /**
+     * @return true if the path starts at the document (/ or //).
+     */
+    boolean isAbsolute() {
+        return absolute;
+    }
+
+    /**
+     * @return the element steps
+     */
+    List<Step> steps() {
+        return steps;
+    }
+
+    /**
+     * @return the attribute selected by the last step or null
+     */
+    String attribute() {
+        return attribute;
+    }
+
+    /**
+     * @return true if the path ends with text()
+     */
+    boolean isText() {
+        return text;
+    }
+
+    /**
+     * @return true if the path only has child steps without predicates
+     */
+    boolean isChildPath() {
+        for (Step step : steps) {
+            if (step.descendant || step.hasPredicates()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static final class Parser {
+        private final String expression;
+        private int pos = 0;
+
+        Parser(String expression) {
+            this.expression = expression.trim();
+        }
+
+        SimplePath parse() {
+            if (expression.isEmpty()) {
+                throw error("empty expression");
+            }
+            List<Step> steps = new ArrayList<>();
+            String attribute = null;
+            boolean text = false;
+            boolean absolute = false;
+            boolean descendant = false;
+            if (expression.equals(".")) {
+                return new SimplePath(expression, false, steps, null, false);
+            }
+            if (expression.startsWith(".//")) {
+                pos = 3;
+                descendant = true;
+            } else if (expression.startsWith("./")) {
+                pos = 2;
+            } else if (expression.startsWith("//")) {
+                pos = 2;
+                absolute = true;
+                descendant = true;
+            } else if (expression.startsWith("/")) {
+                pos = 1;
+                absolute = true;
+            }
+            while (true) {
+                if (pos >= expression.length()) {
+                    throw error("expected a step");
+                }
+                if (peek() == '@') {
+                    pos++;
+                    if (descendant) {
+                        throw error("descendant attributes are not supported");
+                    }
+                    attribute = name();
+                    break;
+                } else if (expression.startsWith("text()", pos)) {
+                    if (descendant) {
+                        throw error("descendant text() is not supported");
+                    }
+                    pos += "text()".length();
+                    text = true;
+                    break;
+                }
+                steps.add(step(descendant));
+                if (pos >= expression.length()) {
+                    break;
+                }
+                if (expression.startsWith("//", pos)) {
+                    pos += 2;
+                    descendant = true;
+                } else if (peek() == '/') {
+                    pos++;
+                    descendant = false;
+                } else {
+                    throw error("unexpected character '" + peek() + "'");
+                }
+            }
+            if (pos != expression.length()) {
+                throw error("unexpected trailing characters");
+            }
+            return new SimplePath(expression, absolute, steps, attribute, text);
+        }
+
+        private Step step(boolean descendant) {
+            String name;
+            if (peek() == '*') {
+                pos++;
+                name = null;
+            } else {
+                name = name();
+            }
+            int position = 0;
+            List<AttributePredicate> attributePredicates = new ArrayList<>();
+            while (pos < expression.length() && peek() == '[') {
+                pos++;
+                if (peek() == '@') {
+                    pos++;
+                    String attributeName = name();
+                    String value = null;
+                    if (peek() == '=') {
+                        pos++;
+                        value = literal();
+                    }
+                    attributePredicates.add(new AttributePredicate(attributeName, value));
+                } else if (Character.isDigit(peek())) {
+                    if (position > 0 || !attributePredicates.isEmpty()) {
+                        throw error("a position is only supported as the first predicate");
+                    }
+                    int start = pos;
+                    while (pos < expression.length() && Character.isDigit(peek())) {
+                        pos++;
+                    }
+                    position = Integer.parseInt(expression.substring(start, pos));
+                    if (position < 1) {
+                        throw error("positions start at 1");
+                    }
+                } else {
+                    throw error("unsupported predicate");
+                }
+                if (peek() != ']') {
+                    throw error("expected ]");
+                }
+                pos++;
+            }
+            return new Step(descendant, name, position, attributePredicates);
+        }
+
+        private String name() {
+            int start = pos;
+            while (pos < expression.length()) {
+                char c = expression.charAt(pos);
+                if (Character.isLetter(c) || c == '_' || pos > start && (Character.isDigit(c) || c == '-' || c == '.')) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            if (start == pos) {
+                throw error("expected a name");
+            }
+            if (pos < expression.length() && (peek() == ':' || peek() == '(')) {
+                throw error("namespace prefixes and functions are not supported");
+            }
+            return expression.substring(start, pos);
+        }
+
+        private String literal() {
+            char quote = peek();
+            if (quote != '\'' && quote != '"') {
+                throw error("expected a quoted value");
+            }
+            int end = expression.indexOf(quote, pos + 1);
+            if (end < 0) {
+                throw error("unterminated value");
+            }
+            String value = expression.substring(pos + 1, end);
+            pos = end + 1;
+            return value;
+        }
+
+        private char peek() {
+            return pos < expression.length() ? expression.charAt(pos) : 0;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " in '" + expression + "'");
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.SimplePath.Step;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathConstants;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * {@link CompiledXPath} for trivial expressions like <code>.</code>, <code>@id</code>, <code>./name</code> or <code>item/price</code> that
+ * evaluates them by walking the DOM directly instead of going through the xpath engine.
+ *
+ * Only paths with child steps (names or <code>*</code>) without predicates, optionally ending in <code>@attribute</code> or
+ * <code>text()</code>, are handled this way. Anything else, including context items that are not nodes, is delegated to the wrapped
+ * {@link CompiledXPath}, so results are always the same as those of the xpath engine.
+ */
+final class SimpleXPathExpression implements CompiledXPath {
+
+    private final SimplePath path;
+    private final Step[] steps;
+    private final CompiledXPath fallback;
+
+    private SimpleXPathExpression(SimplePath path, CompiledXPath fallback) {
+        this.path = path;
+        this.steps = path.steps().toArray(new Step[0]);
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param expression xpath expression
+     * @param fallback compiled version of the same expression, used for anything the fast path does not handle
+     * @return the fast path version of the expression or empty if the expression is not simple enough
+     */
+    static Optional<CompiledXPath> tryCreate(String expression, CompiledXPath fallback) {
+        Optional<SimplePath> parsed = SimplePath.tryParse(expression);
+        if (parsed.isPresent() && parsed.get().isChildPath()
+                && (parsed.get().attribute() == null || !parsed.get().attribute().startsWith("xmlns"))) {
+            return Optional.of(new SimpleXPathExpression(parsed.get(), fallback));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public String expression() {
+        return path.expression();
+    }
+
+    @Override
+    public Object evaluate(Object item, QName returnType) {
+        if (!(item instanceof Node)) {
+            return fallback.evaluate(item, returnType);
+        }
+        Node context = (Node) item;
+        if (path.isAbsolute()) {
+            context = context.getNodeType() == Node.DOCUMENT_NODE ? context : context.getOwnerDocument();
+            if (context == null) {
+                return fallback.evaluate(item, returnType);
+            }
+        }
+        if (XPathConstants.STRING.equals(returnType)) {
+            Node first = first(context, 0);
+            return first == null ? "" : value(first);
+        } else if (XPathConstants.NODE.equals(returnType)) {
+            return first(context, 0);
+        } else if (XPathConstants.BOOLEAN.equals(returnType)) {
+            return first(context, 0) != null;
+        } else if (XPathConstants.NUMBER.equals(returnType)) {
+            Node first = first(context, 0);
+            return first == null ? Double.NaN : toNumber(value(first));
+        } else if (XPathConstants.NODESET.equals(returnType)) {
+            List<Node> nodes = new ArrayList<>();
+            collect(context, 0, nodes);
+            return new ListNodeList(nodes);
+        } else {
+            return fallback.evaluate(item, returnType);
+        }
+    }
+
+    /**
+     * @param compiled compiled expression, possibly wrapped for metrics
+     * @return the fast path expression or null if the expression is not simple
+     */
+    static SimpleXPathExpression unwrap(CompiledXPath compiled) {
+        if (compiled instanceof MeasuredXPath) {
+            compiled = ((MeasuredXPath) compiled).delegate();
+        }
+        return compiled instanceof SimpleXPathExpression ? (SimpleXPathExpression) compiled : null;
+    }
+
+    /**
+     * Lazily iterate over the matches in document order. Unlike a NODESET evaluation, this only walks as much of the tree as is needed
+     * for the matches that are consumed.
+     *
+     * @param context context node
+     * @return iterator over the matches or null if the matches can't be iterated lazily (text() or an absolute path on a detached node)
+     */
+    Iterator<Node> iterate(Node context) {
+        if (path.isText()) {
+            return null;
+        }
+        if (path.isAbsolute()) {
+            context = context.getNodeType() == Node.DOCUMENT_NODE ? context : context.getOwnerDocument();
+            if (context == null) {
+                return null;
+            }
+        }
+        return new LazyMatches(context);
+    }
+
+    /**
+     * @return first match in document order below node for the steps starting at stepIndex
+     */
+    private Node first(Node node, int stepIndex) {
+        if (stepIndex == steps.length) {
+            return select(node);
+        }
+        if (!hasChildElements(node)) {
+            return null;
+        }
+        Step step = steps[stepIndex];
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (matches(step, child)) {
+                Node result = first(child, stepIndex + 1);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void collect(Node node, int stepIndex, List<Node> nodes) {
+        if (stepIndex == steps.length) {
+            if (path.isText()) {
+                if (hasChildElements(node)) {
+                    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        if (DomSupport.isText(child)) {
+                            nodes.add(child);
+                            // adjacent text nodes are a single text node in xpath
+                            while (child.getNextSibling() != null && DomSupport.isText(child.getNextSibling())) {
+                                child = child.getNextSibling();
+                            }
+                        }
+                    }
+                }
+            } else if (path.attribute() != null && DomSupport.mayHaveSeveralAttributes(node)) {
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = DomSupport.attributeIndex(attributes, path.attribute(), 0); i >= 0;
+                        i = DomSupport.attributeIndex(attributes, path.attribute(), i + 1)) {
+                    nodes.add(attributes.item(i));
+                }
+            } else {
+                Node selected = select(node);
+                if (selected != null) {
+                    nodes.add(selected);
+                }
+            }
+        } else if (hasChildElements(node)) {
+            Step step = steps[stepIndex];
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (matches(step, child)) {
+                    collect(child, stepIndex + 1, nodes);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the node itself, its attribute or its first text node, depending on the last step of the path
+     */
+    private Node select(Node node) {
+        if (path.attribute() != null) {
+            return DomSupport.attribute(node, path.attribute());
+        } else if (path.isText()) {
+            if (hasChildElements(node)) {
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (DomSupport.isText(child)) {
+                        return child;
+                    }
+                }
+            }
+            return null;
+        } else {
+            return node;
+        }
+    }
+
+    private String value(Node node) {
+        if (path.isText()) {
+            return DomSupport.mergedText(node);
+        } else if (node instanceof Attr) {
+            return ((Attr) node).getValue();
+        } else {
+            return DomSupport.stringValue(node);
+        }
+    }
+
+    private static boolean matches(Step step, Node child) {
+        return child.getNodeType() == Node.ELEMENT_NODE && (step.name == null || DomSupport.nameMatches(child, step.name));
+    }
+
+    private static boolean hasChildElements(Node node) {
+        // attributes have text children in the DOM but not in xpath
+        short type = node.getNodeType();
+        return type == Node.ELEMENT_NODE || type == Node.DOCUMENT_NODE || type == Node.DOCUMENT_FRAGMENT_NODE;
+    }
+
+    /**
+     * Xpath number conversion: an optional minus sign followed by digits with an optional decimal point. Anything else is NaN.
+     */
+    static double toNumber(String value) {
+        String trimmed = value.trim();
+        int start = trimmed.startsWith("-") ? 1 : 0;
+        boolean digits = false;
+        boolean point = false;
+        for (int i = start; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return Double.NaN;
+            }
+        }
+        return digits ? Double.parseDouble(trimmed) : Double.NaN;
+    }
+
+    /**
+     * @return the xpath engine version of the expression
+     */
+    CompiledXPath fallback() {
+        return fallback;
+    }
+
+    @Override
+    public String toString() {
+        return path.expression();
+    }
+
+    /**
+     * Depth first walk that keeps a cursor per step, so it needs no memory beyond the depth of the path. The next match is found before the
+     * current one is returned, so callers may detach the returned node without cutting the walk short.
+     */
+    private final class LazyMatches implements Iterator<Node> {
+        private final Node context;
+        private final Node[] cursors = new Node[steps.length];
+        private int level = -1;
+        private Node next;
+        private boolean done = false;
+        // remaining candidates when an element may have several matching attributes
+        private NamedNodeMap attributes;
+        private int attributeIndex;
+
+        LazyMatches(Node context) {
+            this.context = context;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = advance();
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Node next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node result = next;
+            next = advance();
+            done = next == null;
+            return result;
+        }
+
+        private Node advance() {
+            if (attributes != null) {
+                Node attribute = nextAttribute();
+                if (attribute != null) {
+                    return attribute;
+                }
+            }
+            if (steps.length == 0) {
+                if (level == -1) {
+                    level = 0;
+                    return selectFirst(context);
+                }
+                return null;
+            }
+            if (level == -1) {
+                level = 0;
+                cursors[0] = firstMatch(context, steps[0]);
+            } else {
+                cursors[level] = nextMatch(cursors[level], steps[level]);
+            }
+            while (true) {
+                if (cursors[level] == null) {
+                    if (level == 0) {
+                        return null;
+                    }
+                    level--;
+                    cursors[level] = nextMatch(cursors[level], steps[level]);
+                } else if (level == steps.length - 1) {
+                    Node selected = selectFirst(cursors[level]);
+                    if (selected != null) {
+                        return selected;
+                    }
+                    cursors[level] = nextMatch(cursors[level], steps[level]);
+                } else {
+                    cursors[level + 1] = firstMatch(cursors[level], steps[level + 1]);
+                    level++;
+                }
+            }
+        }
+
+        private Node selectFirst(Node node) {
+            if (path.attribute() != null && DomSupport.mayHaveSeveralAttributes(node)) {
+                attributes = node.getAttributes();
+                attributeIndex = -1;
+                return nextAttribute();
+            }
+            return select(node);
+        }
+
+        private Node nextAttribute() {
+            attributeIndex = DomSupport.attributeIndex(attributes, path.attribute(), attributeIndex + 1);
+            if (attributeIndex < 0) {
+                attributes = null;
+                return null;
+            }
+            return attributes.item(attributeIndex);
+        }
+
+        private Node firstMatch(Node parent, Step step) {
+            if (!hasChildElements(parent)) {
+                return null;
+            }
+            Node child = parent.getFirstChild();
+            while (child != null && !matches(step, child)) {
+                child = child.getNextSibling();
+            }
+            return child;
+        }
+
+        private Node nextMatch(Node node, Step step) {
+            Node sibling = node.getNextSibling();
+            while (sibling != null && !matches(step, sibling)) {
+                sibling = sibling.getNextSibling();
+            }
+            return sibling;
+        }
+    }
+
+    static final class ListNodeList implements NodeList {
+        private final List<Node> nodes;
+
+        ListNodeList(List<Node> nodes) {
+            this.nodes = nodes.isEmpty() ? Collections.<Node>emptyList() : nodes;
+        }
+
+        @Override
+        public Node item(int index) {
+            return index >= 0 && index < nodes.size() ? nodes.get(index) : null;
+        }
+
+        @Override
+        public int getLength() {
+            return nodes.size();
+        }
+    }
+}
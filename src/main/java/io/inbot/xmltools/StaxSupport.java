@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.InputStream;
+import java.io.Reader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Shared StAX configuration for the streaming features. The factory is namespace aware (names are matched on their local name), coalesces
+ * text and does not process DTDs or external entities.
+ */
+final class StaxSupport {
+
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+    private StaxSupport() {
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    static XMLStreamReader createReader(InputStream in) {
+        try {
+            // factories are not guaranteed to be thread safe
+            synchronized (INPUT_FACTORY) {
+                return INPUT_FACTORY.createXMLStreamReader(in);
+            }
+        } catch (XMLStreamException e) {
+            throw RethrownException.rethrow(e);
+        }
+    }
+
+    static XMLStreamReader createReader(InputStream in, String encoding) {
+        try {
+            synchronized (INPUT_FACTORY) {
+                return INPUT_FACTORY.createXMLStreamReader(in, encoding);
+            }
+        } catch (XMLStreamException e) {
+            throw RethrownException.rethrow(e);
+        }
+    }
+
+    static XMLStreamReader createReader(Reader reader) {
+        try {
+            synchronized (INPUT_FACTORY) {
+                return INPUT_FACTORY.createXMLStreamReader(reader);
+            }
+        } catch (XMLStreamException e) {
+            throw RethrownException.rethrow(e);
+        }
+    }
+
+    static void closeQuietly(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // nothing we can do
+        }
+    }
+
+    /**
+     * @param reader reader positioned on a START_ELEMENT
+     * @param name attribute local name
+     * @return the attribute value or null
+     */
+    static String attributeValue(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (name.equals(reader.getAttributeLocalName(i))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+}
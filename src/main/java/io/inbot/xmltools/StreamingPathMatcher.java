@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.SimplePath.AttributePredicate;
+import io.inbot.xmltools.SimplePath.Step;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Tracks which steps of a set of {@link SimplePath}s match the currently open elements of a StAX stream.
+ *
+ * For every open element we keep a bit set with the steps (of all paths) that match the path from the document to that element, and
+ * a bit set with the union of those for the element and all its ancestors, which is what descendant steps need. Levels are reused, so
+ * apart from the sibling counters for positional predicates this does not allocate per element.
+ */
+final class StreamingPathMatcher {
+
+    private static final class Level {
+        final BitSet matched = new BitSet();
+        final BitSet matchedByAncestorOrSelf = new BitSet();
+        final Map<String, int[]> childCounts = new HashMap<>();
+        int childElements = 0;
+
+        void clear() {
+            matched.clear();
+            matchedByAncestorOrSelf.clear();
+            childCounts.clear();
+            childElements = 0;
+        }
+    }
+
+    private final SimplePath[] paths;
+    private final int[] offsets;
+    private final boolean positional;
+    private final List<Level> levels = new ArrayList<>();
+    // depth of the current element; 0 is the document
+    private int depth = 0;
+
+    StreamingPathMatcher(SimplePath... paths) {
+        this.paths = paths;
+        offsets = new int[paths.length];
+        int offset = 0;
+        boolean hasPositions = false;
+        for (int i = 0; i < paths.length; i++) {
+            if (paths[i].steps().isEmpty()) {
+                throw new IllegalArgumentException("path should select at least one element: " + paths[i]);
+            }
+            offsets[i] = offset;
+            offset += paths[i].steps().size();
+            for (Step step : paths[i].steps()) {
+                hasPositions = hasPositions || step.position > 0;
+            }
+        }
+        positional = hasPositions;
+        levels.add(new Level());
+    }
+
+    /**
+     * Call for every START_ELEMENT.
+     *
+     * @param reader reader positioned on a START_ELEMENT
+     */
+    void startElement(XMLStreamReader reader) {
+        String localName = reader.getLocalName();
+        Level parent = levels.get(depth);
+        int sameNamePosition = 0;
+        int elementPosition = 0;
+        if (positional) {
+            elementPosition = ++parent.childElements;
+            int[] count = parent.childCounts.get(localName);
+            if (count == null) {
+                count = new int[1];
+                parent.childCounts.put(localName, count);
+            }
+            sameNamePosition = ++count[0];
+        }
+        depth++;
+        if (levels.size() == depth) {
+            levels.add(new Level());
+        }
+        Level current = levels.get(depth);
+        current.clear();
+        for (int p = 0; p < paths.length; p++) {
+            List<Step> steps = paths[p].steps();
+            int offset = offsets[p];
+            for (int i = 0; i < steps.size(); i++) {
+                Step step = steps.get(i);
+                if (!step.matchesName(localName)) {
+                    continue;
+                }
+                boolean prefixMatches;
+                if (i == 0) {
+                    prefixMatches = step.descendant || depth == 1;
+                } else if (step.descendant) {
+                    prefixMatches = parent.matchedByAncestorOrSelf.get(offset + i - 1);
+                } else {
+                    prefixMatches = parent.matched.get(offset + i - 1);
+                }
+                if (prefixMatches && predicatesMatch(step, reader, step.name == null ? elementPosition : sameNamePosition)) {
+                    current.matched.set(offset + i);
+                }
+            }
+        }
+        current.matchedByAncestorOrSelf.or(parent.matchedByAncestorOrSelf);
+        current.matchedByAncestorOrSelf.or(current.matched);
+    }
+
+    private static boolean predicatesMatch(Step step, XMLStreamReader reader, int position) {
+        if (step.position > 0 && step.position != position) {
+            return false;
+        }
+        for (AttributePredicate predicate : step.attributePredicates) {
+            if (!predicate.matches(StaxSupport.attributeValue(reader, predicate.name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Call for every END_ELEMENT.
+     */
+    void endElement() {
+        depth--;
+    }
+
+    /**
+     * @param path index of the path
+     * @return true if all element steps of the path match the current element
+     */
+    boolean matches(int path) {
+        return depth > 0 && levels.get(depth).matched.get(offsets[path] + paths[path].steps().size() - 1);
+    }
+
+    /**
+     * @return true if any of the paths matches the current element
+     */
+    boolean matchesAny() {
+        for (int p = 0; p < paths.length; p++) {
+            if (matches(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return depth of the current element; 1 for the root element
+     */
+    int depth() {
+        return depth;
+    }
+
+    int pathCount() {
+        return paths.length;
+    }
+
+    SimplePath path(int index) {
+        return paths[index];
+    }
+}
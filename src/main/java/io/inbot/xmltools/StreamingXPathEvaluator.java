@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Evaluates a set of simple xpath expressions in a single pass over a StAX stream without building a DOM. Use this to extract fields from
+ * documents that are too large to parse into memory.
+ *
+ * Only a subset of xpath is supported: paths with child (<code>/</code>) and descendant (<code>//</code>) steps, <code>*</code>, attribute
+ * and positional predicates (<code>item[@type='x']</code>, <code>item[2]</code>) and a final <code>@attribute</code> or <code>text()</code>
+ * step. Relative paths are evaluated against the document. Elements and attributes are matched on their local name. For elements the value
+ * is the concatenated text of the element, just like the xpath string value.
+ *
+ * Instances are immutable and thread safe; create one per set of expressions and reuse it.
+ *
+ * <pre>
+ * StreamingXPathEvaluator evaluator = new StreamingXPathEvaluator("/feed/title", "//item/@id");
+ * // constant memory, values are reported as soon as they are complete
+ * evaluator.evaluate(inputStream, (expression, value) -&gt; ...);
+ * // or collect the values for all expressions
+ * StreamingXPathResult result = evaluator.evaluate(inputStream);
+ * String[] ids = result.getStringValues("//item/@id");
+ * </pre>
+ */
+public class StreamingXPathEvaluator {
+
+    private final List<String> expressions;
+    private final SimplePath[] paths;
+
+    /**
+     * @param expressions expressions in the supported subset
+     * @throws IllegalArgumentException if an expression is not supported
+     */
+    public StreamingXPathEvaluator(String... expressions) {
+        this(Arrays.asList(expressions));
+    }
+
+    /**
+     * @param expressions expressions in the supported subset
+     * @throws IllegalArgumentException if an expression is not supported
+     */
+    public StreamingXPathEvaluator(Collection<String> expressions) {
+        this.expressions = Collections.unmodifiableList(new ArrayList<>(expressions));
+        paths = new SimplePath[this.expressions.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = SimplePath.parse(this.expressions.get(i));
+        }
+        // validates the paths
+        new StreamingPathMatcher(paths);
+    }
+
+    /**
+     * @return the expressions
+     */
+    public List<String> expressions() {
+        return expressions;
+    }
+
+    /**
+     * Evaluate the expressions and report the values as soon as they are complete. Values for elements are reported when the element
+     * closes. Memory use does not depend on the size of the document.
+     *
+     * @param in xml input; the encoding is detected by the parser
+     * @param consumer called with the expression and the raw (untrimmed) value for every match
+     */
+    public void evaluate(InputStream in, BiConsumer<String, String> consumer) {
+        evaluate(StaxSupport.createReader(in), callback(consumer));
+    }
+
+    /**
+     * @param reader xml input
+     * @param consumer called with the expression and the raw (untrimmed) value for every match
+     */
+    public void evaluate(Reader reader, BiConsumer<String, String> consumer) {
+        evaluate(StaxSupport.createReader(reader), callback(consumer));
+    }
+
+    /**
+     * Evaluate the expressions and collect all the values.
+     *
+     * @param in xml input; the encoding is detected by the parser
+     * @return values for each of the expressions in document order
+     */
+    public StreamingXPathResult evaluate(InputStream in) {
+        return collect(StaxSupport.createReader(in));
+    }
+
+    /**
+     * @param reader xml input
+     * @return values for each of the expressions in document order
+     */
+    public StreamingXPathResult evaluate(Reader reader) {
+        return collect(StaxSupport.createReader(reader));
+    }
+
+    private Handler callback(BiConsumer<String, String> consumer) {
+        return new Handler() {
+            @Override
+            public int start(int path) {
+                return -1;
+            }
+
+            @Override
+            public void value(int path, int slot, String value) {
+                consumer.accept(expressions.get(path), value);
+            }
+        };
+    }
+
+    private StreamingXPathResult collect(XMLStreamReader reader) {
+        List<List<String>> values = new ArrayList<>(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            values.add(new ArrayList<>());
+        }
+        evaluate(reader, new Handler() {
+            @Override
+            public int start(int path) {
+                // reserve a slot so values end up in document order even though nested elements complete first
+                List<String> list = values.get(path);
+                list.add(null);
+                return list.size() - 1;
+            }
+
+            @Override
+            public void value(int path, int slot, String value) {
+                values.get(path).set(slot, value);
+            }
+        });
+        Map<String, List<String>> result = new HashMap<>();
+        for (int i = 0; i < paths.length; i++) {
+            result.put(expressions.get(i), values.get(i));
+        }
+        return new StreamingXPathResult(result);
+    }
+
+    private interface Handler {
+        int start(int path);
+
+        void value(int path, int slot, String value);
+    }
+
+    private static final class Capture {
+        final int path;
+        final int slot;
+        final int depth;
+        final StringBuilder text = new StringBuilder();
+
+        Capture(int path, int slot, int depth) {
+            this.path = path;
+            this.slot = slot;
+            this.depth = depth;
+        }
+    }
+
+    private void evaluate(XMLStreamReader reader, Handler handler) {
+        StreamingPathMatcher matcher = new StreamingPathMatcher(paths);
+        List<Capture> captures = new ArrayList<>();
+        // depths of elements for which we report direct text() children, per path
+        List<int[]> textWatches = new ArrayList<>();
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    matcher.startElement(reader);
+                    for (int p = 0; p < paths.length; p++) {
+                        if (matcher.matches(p)) {
+                            SimplePath path = paths[p];
+                            if (path.attribute() != null) {
+                                String value = StaxSupport.attributeValue(reader, path.attribute());
+                                if (value != null) {
+                                    handler.value(p, handler.start(p), value);
+                                }
+                            } else if (path.isText()) {
+                                textWatches.add(new int[] { p, matcher.depth() });
+                            } else {
+                                captures.add(new Capture(p, handler.start(p), matcher.depth()));
+                            }
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (!captures.isEmpty() || !textWatches.isEmpty()) {
+                        String text = reader.getText();
+                        for (int i = 0; i < captures.size(); i++) {
+                            captures.get(i).text.append(text);
+                        }
+                        for (int i = textWatches.size() - 1; i >= 0 && textWatches.get(i)[1] == matcher.depth(); i--) {
+                            int p = textWatches.get(i)[0];
+                            handler.value(p, handler.start(p), text);
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    int depth = matcher.depth();
+                    while (!captures.isEmpty() && captures.get(captures.size() - 1).depth == depth) {
+                        Capture capture = captures.remove(captures.size() - 1);
+                        handler.value(capture.path, capture.slot, capture.text.toString());
+                    }
+                    while (!textWatches.isEmpty() && textWatches.get(textWatches.size() - 1)[1] == depth) {
+                        textWatches.remove(textWatches.size() - 1);
+                    }
+                    matcher.endElement();
+                    break;
+                default:
+                    break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw RethrownException.rethrow(e);
+        } finally {
+            StaxSupport.closeQuietly(reader);
+        }
+    }
+}
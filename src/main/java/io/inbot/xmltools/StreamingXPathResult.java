@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Values collected by {@link StreamingXPathEvaluator#evaluate(java.io.InputStream)}. The getters behave like their counterparts in
+ * {@link XPathBrowser}: values are trimmed, blank values are treated as absent and single value getters use the first match in document
+ * order.
+ */
+public class StreamingXPathResult {
+
+    private final Map<String, List<String>> values;
+
+    StreamingXPathResult(Map<String, List<String>> values) {
+        this.values = values;
+    }
+
+    private List<String> values(String expr) {
+        List<String> list = values.get(expr);
+        if (list == null) {
+            throw new IllegalArgumentException("expression was not evaluated: " + expr);
+        }
+        return list;
+    }
+
+    /**
+     * @param expr one of the evaluated expressions
+     * @return the trimmed value of the first match or empty if there is no match or it is blank
+     */
+    public Optional<String> getString(String expr) {
+        List<String> list = values(expr);
+        if (list.isEmpty()) {
+            return Optional.empty();
+        }
+        String value = list.get(0).trim();
+        if (StringUtils.isBlank(value)) {
+            return Optional.empty();
+        } else {
+            return Optional.of(value);
+        }
+    }
+
+    /**
+     * @param expr one of the evaluated expressions
+     * @return the first match as a boolean or false if there is no match
+     */
+    public boolean getBoolean(String expr) {
+        return getString(expr).map(s -> Boolean.valueOf(s)).orElse(false);
+    }
+
+    /**
+     * @param expr one of the evaluated expressions
+     * @return the first match as an int
+     */
+    public Optional<Integer> getInt(String expr) {
+        return getString(expr).map(s -> Integer.valueOf(s));
+    }
+
+    /**
+     * @param expr one of the evaluated expressions
+     * @return the first match as a long
+     */
+    public Optional<Long> getLong(String expr) {
+        return getString(expr).map(s -> Long.valueOf(s));
+    }
+
+    /**
+     * @param expr one of the evaluated expressions
+     * @return the first match as a double
+     */
+    public Optional<Double> getDouble(String expr) {
+        return getString(expr).map(s -> Double.valueOf(s));
+    }
+
+    /**
+     * @param expr one of the evaluated expressions
+     * @return trimmed values of all matches in document order; blank values are returned as empty strings
+     */
+    public String[] getStringValues(String expr) {
+        List<String> list = values(expr);
+        String[] result = new String[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i).trim();
+        }
+        return result;
+    }
+
+    /**
+     * @param expr one of the evaluated expressions
+     * @return number of matches
+     */
+    public int count(String expr) {
+        return values(expr).size();
+    }
+}
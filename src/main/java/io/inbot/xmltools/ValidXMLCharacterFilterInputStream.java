@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Byte level variant of {@link ValidXMLCharacterFilterReader} for UTF-8 input. Drops bytes that encode characters that are illegal in
+ * XML as well as malformed UTF-8 (stray continuation bytes, overlong encodings, encoded surrogates and truncated sequences) without decoding
+ * the input to characters. Reads are done in bulk straight into the caller's buffer, which is then compacted in place.
+ *
+ * The filtered stream can be given to the parser directly, which also lets the parser use its own UTF-8 decoder. Mark and reset are not
+ * supported.
+ */
+public class ValidXMLCharacterFilterInputStream extends FilterInputStream {
+
+    // reads smaller than this go through the scratch buffer, so there is always room for carried over bytes
+    private static final int MIN_DIRECT_READ = 8;
+
+    // bytes of a multi byte sequence that was cut off at the end of the previous read
+    private final byte[] carry = new byte[3];
+    private int carryLength = 0;
+
+    private final byte[] scratch = new byte[64];
+    private int scratchPos = 0;
+    private int scratchEnd = 0;
+
+    /**
+     * @param in UTF-8 encoded input
+     */
+    public ValidXMLCharacterFilterInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (scratchPos == scratchEnd && fillScratch() == -1) {
+            return -1;
+        }
+        return scratch[scratchPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len <= 0) {
+            return 0;
+        }
+        if (scratchPos < scratchEnd) {
+            int n = Math.min(len, scratchEnd - scratchPos);
+            System.arraycopy(scratch, scratchPos, b, off, n);
+            scratchPos += n;
+            return n;
+        }
+        if (len < MIN_DIRECT_READ) {
+            if (fillScratch() == -1) {
+                return -1;
+            }
+            return read(b, off, len);
+        }
+        return fill(b, off, len);
+    }
+
+    private int fillScratch() throws IOException {
+        int read = fill(scratch, 0, scratch.length);
+        scratchPos = 0;
+        scratchEnd = read == -1 ? 0 : read;
+        return read;
+    }
+
+    private int fill(byte[] b, int off, int len) throws IOException {
+        int produced = 0;
+        while (produced == 0) {
+            int carried = carryLength;
+            System.arraycopy(carry, 0, b, off, carried);
+            carryLength = 0;
+            int read = in.read(b, off + carried, len - carried);
+            if (read == -1) {
+                // a truncated sequence at the end of the input is dropped
+                return -1;
+            }
+            produced = compact(b, off, off + carried + read) - off;
+        }
+        return produced;
+    }
+
+    /**
+     * Drop invalid bytes in b[from,end) by moving the valid ones towards from. An incomplete sequence at the end is moved to the carry buffer.
+     *
+     * @return the position after the last valid byte
+     */
+    private int compact(byte[] b, int from, int end) {
+        int w = from;
+        int i = from;
+        while (i < end) {
+            int x = b[i] & 0xFF;
+            if (x < 0x80) {
+                if (x >= 0x20 || x == 0xA || x == 0x9 || x == 0xD) {
+                    b[w++] = (byte) x;
+                }
+                i++;
+                continue;
+            }
+            int length = sequenceLength(x);
+            if (length == 0) {
+                // stray continuation byte or a lead byte that is never valid
+                i++;
+                continue;
+            }
+            if (i + length > end) {
+                if (continuationBytesValid(b, i, end)) {
+                    carryLength = end - i;
+                    System.arraycopy(b, i, carry, 0, carryLength);
+                    return w;
+                }
+                i++;
+                continue;
+            }
+            if (continuationBytesValid(b, i, i + length) && allowedInXml(b, i, length)) {
+                for (int j = 0; j < length; j++) {
+                    b[w++] = b[i + j];
+                }
+                i += length;
+            } else {
+                // drop the lead byte; any continuation bytes are dropped as stray bytes
+                i++;
+            }
+        }
+        return w;
+    }
+
+    private static int sequenceLength(int lead) {
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            return 2;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            return 3;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            return 4;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Checks the continuation bytes in b(start,end), including the restrictions on the second byte that rule out overlong
+     * encodings, surrogates and code points above 0x10FFFF.
+     */
+    private static boolean continuationBytesValid(byte[] b, int start, int end) {
+        int lead = b[start] & 0xFF;
+        for (int j = start + 1; j < end; j++) {
+            int c = b[j] & 0xFF;
+            if (c < 0x80 || c > 0xBF) {
+                return false;
+            }
+            if (j == start + 1) {
+                if (lead == 0xE0 && c < 0xA0 || lead == 0xED && c > 0x9F || lead == 0xF0 && c < 0x90 || lead == 0xF4 && c > 0x8F) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean allowedInXml(byte[] b, int start, int length) {
+        // everything that is well formed is allowed except U+FFFE and U+FFFF (EF BF BE and EF BF BF)
+        return !(length == 3 && (b[start] & 0xFF) == 0xEF && (b[start + 1] & 0xFF) == 0xBF && (b[start + 2] & 0xFF) >= 0xBE);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        byte[] skipBuffer = new byte[(int) Math.min(n, 512)];
+        long remaining = n;
+        while (remaining > 0) {
+            int read = read(skipBuffer, 0, (int) Math.min(remaining, skipBuffer.length));
+            if (read == -1) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return scratchEnd - scratchPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+}
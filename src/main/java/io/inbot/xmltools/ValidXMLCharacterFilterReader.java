@@ -28,9 +28,23 @@ import java.io.Reader;
 /**
  * Remove characters from an imput stream that are illegal in XML. Useful when parsing content from an unreliable source
  * if you don't want to break on every little error. This merely drops any characters that don't pass the filter.
+ *
+ * Reads are done in bulk straight into the caller's buffer, which is then compacted in place. Valid surrogate pairs (supplementary
+ * characters) are passed through; unpaired surrogates are dropped. Mark and reset are not supported.
+ *
+ * If you have bytes rather than characters and they are UTF-8, use {@link ValidXMLCharacterFilterInputStream}, which avoids decoding.
  */
 public class ValidXMLCharacterFilterReader extends FilterReader {
 
+    private static final int NONE = -1;
+
+    // high surrogate at the end of the previous chunk; only valid if the next character is a low surrogate
+    private int pendingHighSurrogate = NONE;
+    // low surrogate of a valid pair that did not fit in the caller's buffer
+    private int pendingLowSurrogate = NONE;
+
+    private final char[] single = new char[1];
+
     /**
      * Create a new {@link ValidXMLCharacterFilterReader}.
      *
@@ -40,24 +54,122 @@ public class ValidXMLCharacterFilterReader extends FilterReader {
         super(in);
     }
 
+    @Override
+    public int read() throws IOException {
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0];
+    }
+
     @Override
     public int read(final char[] buf, final int off, final int len) throws IOException {
-        int length = len;
-        int offSet = off;
-        if (length <= 0) {
+        if (len <= 0) {
             return 0;
         }
-        final int start = offSet;
-        int c;
+        final int limit = off + len;
+        int out = off;
+        if (pendingLowSurrogate != NONE) {
+            buf[out++] = (char) pendingLowSurrogate;
+            pendingLowSurrogate = NONE;
+            return 1;
+        }
+        while (out == off) {
+            if (pendingHighSurrogate != NONE) {
+                // rare; only happens when a surrogate pair is split over two reads
+                final char high = (char) pendingHighSurrogate;
+                pendingHighSurrogate = NONE;
+                final int c = super.in.read();
+                if (c == -1) {
+                    return -1;
+                }
+                if (Character.isLowSurrogate((char) c)) {
+                    buf[out++] = high;
+                    if (out < limit) {
+                        buf[out++] = (char) c;
+                    } else {
+                        pendingLowSurrogate = c;
+                    }
+                    return out - off;
+                } else if (Character.isHighSurrogate((char) c)) {
+                    pendingHighSurrogate = c;
+                } else if (ValidXMLCharacterFilterReader.isAllowedInXml(c)) {
+                    buf[out] = (char) c;
+                    return 1;
+                }
+                continue;
+            }
+            final int read = super.in.read(buf, out, limit - out);
+            if (read == -1) {
+                // drops a dangling high surrogate
+                return out > off ? out - off : -1;
+            }
+            out = compact(buf, out, out + read);
+        }
+        return out - off;
+    }
+
+    /**
+     * Drop invalid characters in buf[from,end) by moving the valid ones towards from.
+     *
+     * @return the position after the last valid character
+     */
+    private int compact(final char[] buf, final int from, final int end) {
+        int w = from;
+        for (int i = from; i < end; i++) {
+            final char c = buf[i];
+            if (c >= 0x20 && c < 0xD800 || c == 0xA || c == 0x9 || c == 0xD || c >= 0xE000 && c <= 0xFFFD) {
+                buf[w++] = c;
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 < end) {
+                    final char low = buf[i + 1];
+                    if (Character.isLowSurrogate(low)) {
+                        buf[w++] = c;
+                        buf[w++] = low;
+                        i++;
+                    }
+                } else {
+                    pendingHighSurrogate = c;
+                }
+            }
+            // everything else (control characters, unpaired low surrogates, 0xFFFE and 0xFFFF) is dropped
+        }
+        return w;
+    }
 
-        while (length > 0 && (c = super.in.read()) != -1) {
-            if (ValidXMLCharacterFilterReader.isAllowedInXml(c)) {
-                buf[offSet++] = (char) c;
-                --length;
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0L) {
+            throw new IllegalArgumentException("skip value is negative");
+        }
+        final char[] skipBuffer = new char[(int) Math.min(n, 512)];
+        long remaining = n;
+        while (remaining > 0) {
+            final int read = read(skipBuffer, 0, (int) Math.min(remaining, skipBuffer.length));
+            if (read == -1) {
+                break;
             }
+            remaining -= read;
         }
-        final int count = offSet - start;
-        return count > 0 ? count : -1;
+        return n - remaining;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return pendingLowSurrogate != NONE || super.in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
     }
 
     /**
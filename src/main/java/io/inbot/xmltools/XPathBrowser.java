@@ -21,26 +21,27 @@
  */
 package io.inbot.xmltools;
 
-import io.inbot.xmltools.exceptions.RethrownException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.text.ParseException;
 import java.text.ParsePosition;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeMap;
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
 import org.apache.commons.lang3.StringUtils;
-import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -51,6 +52,8 @@ import org.w3c.dom.NodeList;
  *
  * Note, you should use the XPathBrowserFactory for creating instances.
  *
+ * Browsers are not thread safe, because the DOM is not. Use {@link #freeze()} to get a browser that may be shared between threads.
+ *
  * Note, this class does not support namespaces currently. TODO: check here for potential solution
  * http://blog.davber.com/2006/09/17/xpath-with-namespaces-in-java/
  */
@@ -58,10 +61,37 @@ public class XPathBrowser {
 
     private final Node rootNode;
     private final XPathExpressionCache expressionCache;
+    private final FrozenDocument frozen;
 
     XPathBrowser(XPathExpressionCache expressionCache, Node node) {
+        this(expressionCache, node, null);
+    }
+
+    XPathBrowser(XPathExpressionCache expressionCache, Node node, FrozenDocument frozen) {
         this.expressionCache = expressionCache;
         this.rootNode=node;
+        this.frozen = frozen;
+    }
+
+    /**
+     * Prepare the document for concurrent reads and return a browser on the current node that may be shared between threads. This fully
+     * expands the document, so all reads after this are read only. Browsers obtained from a frozen browser are frozen as well, and
+     * {@link #streamMatching(String)} returns sized streams that split evenly when used in parallel.
+     *
+     * Don't modify the document after freezing it; frozen browsers throw a {@link java.util.ConcurrentModificationException} if it was.
+     * Freezing is not thread safe itself, so do it before sharing the browser.
+     *
+     * @return a frozen browser on the same node
+     */
+    public XPathBrowser freeze() {
+        return frozen != null ? this : new XPathBrowser(expressionCache, rootNode, FrozenDocument.freeze(rootNode));
+    }
+
+    /**
+     * @return true if this browser was frozen and can be shared between threads
+     */
+    public boolean isFrozen() {
+        return frozen != null;
     }
 
     /**
@@ -74,11 +104,10 @@ public class XPathBrowser {
      * @return DOM object of the specified type or null.
      */
     public Object eval(final String expr, final Node node, final QName resultType) {
-        try {
-            return expressionCache.getExpression(expr).evaluate(node, resultType);
-        } catch (XPathExpressionException e) {
-            throw RethrownException.rethrow(e);
+        if (frozen != null) {
+            frozen.checkNotModified();
         }
+        return expressionCache.get(expr).evaluate(node, resultType);
     }
 
     /**
@@ -181,13 +210,7 @@ public class XPathBrowser {
     }
 
     public Optional<Number> getNumber(Locale locale, final Node n, final String expr) {
-        return getString(n, expr).map(s -> {
-            try {
-                return NumberFormat.getInstance(locale).parse(s);
-            } catch (ParseException e) {
-                throw RethrownException.rethrow(e);
-            }
-        });
+        return getString(n, expr).map(s -> LocaleNumberParser.forLocale(locale).parseNumber(s));
     }
 
     public Optional<BigDecimal> getBigDecimal(Locale locale, final String expr) {
@@ -195,10 +218,25 @@ public class XPathBrowser {
     }
 
     public Optional<BigDecimal> getBigDecimal(Locale locale, final Node n, final String expr) {
-        return getString(n, expr).map(s -> {
-            DecimalFormat nf = (DecimalFormat)NumberFormat.getInstance(locale);
-            nf.setParseBigDecimal(true);
-            return (BigDecimal)nf.parse(s, new ParsePosition(0));
+        return getString(n, expr).map(s -> LocaleNumberParser.forLocale(locale).parseBigDecimal(s));
+    }
+
+    /**
+     * Get the values of all nodes that match the expression as BigDecimals, parsed with a single borrowed format.
+     *
+     * @param locale locale of the values
+     * @param expr xpath expression.
+     * @return array with the values of the matching nodes; null for values that are empty or not a number
+     */
+    public BigDecimal[] getBigDecimalValues(Locale locale, final String expr) {
+        final NodeList nodes = getNodeList(node(), expr);
+        return LocaleNumberParser.forLocale(locale).withBigDecimalFormat(format -> {
+            BigDecimal[] values = new BigDecimal[nodes.getLength()];
+            for (int i = 0; i < values.length; i++) {
+                String value = DomSupport.stringValue(nodes.item(i)).trim();
+                values[i] = value.isEmpty() ? null : (BigDecimal) format.parse(value, new ParsePosition(0));
+            }
+            return values;
         });
     }
 
@@ -243,6 +281,87 @@ public class XPathBrowser {
 		return getLong(".");
     }
 
+    /**
+     * Evaluate expression to a long without creating intermediate strings, Optionals or boxed values. Use this for numeric heavy documents.
+     *
+     * @param expr xpath expression.
+     * @param defaultValue returned if the node was absent or empty.
+     * @return the value
+     * @throws NumberFormatException if the value is not a long
+     */
+    public long getLong(final String expr, long defaultValue) {
+        return getLong(node(), expr, defaultValue);
+    }
+
+    public long getLong(final Node n, final String expr, long defaultValue) {
+        String value = (String) eval(expr, n, XPathConstants.STRING);
+        return Numbers.isBlank(value) ? defaultValue : Numbers.parseLong(value);
+    }
+
+    /**
+     * @param expr xpath expression.
+     * @return the value or empty if the node was absent or empty.
+     * @throws NumberFormatException if the value is not a long
+     */
+    public OptionalLong getAsLong(final String expr) {
+        String value = (String) eval(expr, node(), XPathConstants.STRING);
+        return Numbers.isBlank(value) ? OptionalLong.empty() : OptionalLong.of(Numbers.parseLong(value));
+    }
+
+    /**
+     * Evaluate expression to an int without creating intermediate strings, Optionals or boxed values.
+     *
+     * @param expr xpath expression.
+     * @param defaultValue returned if the node was absent or empty.
+     * @return the value
+     * @throws NumberFormatException if the value is not an int
+     */
+    public int getInt(final String expr, int defaultValue) {
+        return getInt(node(), expr, defaultValue);
+    }
+
+    public int getInt(final Node n, final String expr, int defaultValue) {
+        String value = (String) eval(expr, n, XPathConstants.STRING);
+        return Numbers.isBlank(value) ? defaultValue : Numbers.parseInt(value);
+    }
+
+    /**
+     * @param expr xpath expression.
+     * @return the value or empty if the node was absent or empty.
+     * @throws NumberFormatException if the value is not an int
+     */
+    public OptionalInt getAsInt(final String expr) {
+        String value = (String) eval(expr, node(), XPathConstants.STRING);
+        return Numbers.isBlank(value) ? OptionalInt.empty() : OptionalInt.of(Numbers.parseInt(value));
+    }
+
+    /**
+     * Evaluate expression to a double without creating Optionals or boxed values.
+     *
+     * @param expr xpath expression.
+     * @param defaultValue returned if the node was absent or empty.
+     * @return the value
+     * @throws NumberFormatException if the value is not a double
+     */
+    public double getDouble(final String expr, double defaultValue) {
+        return getDouble(node(), expr, defaultValue);
+    }
+
+    public double getDouble(final Node n, final String expr, double defaultValue) {
+        String value = (String) eval(expr, n, XPathConstants.STRING);
+        return Numbers.isBlank(value) ? defaultValue : Numbers.parseDouble(value);
+    }
+
+    /**
+     * @param expr xpath expression.
+     * @return the value or empty if the node was absent or empty.
+     * @throws NumberFormatException if the value is not a double
+     */
+    public OptionalDouble getAsDouble(final String expr) {
+        String value = (String) eval(expr, node(), XPathConstants.STRING);
+        return Numbers.isBlank(value) ? OptionalDouble.empty() : OptionalDouble.of(Numbers.parseDouble(value));
+    }
+
     /**
      * Evaluate an expression that should result in a String (relative to the provided node).
      *
@@ -301,12 +420,8 @@ public class XPathBrowser {
 	 * @throws IllegalArgumentException if the node does not exist
 	 */
 	public Optional<Node> getFirstNode(Node n, String expr) {
-		NodeList nodeList = getNodeList(n, expr);
-		if(nodeList.getLength() == 0) {
-			return Optional.empty();
-		} else {
-			return Optional.of(nodeList.item(0));
-		}
+	    // a NODE evaluation stops at the first match instead of collecting all of them
+		return Optional.ofNullable((Node) eval(expr, n, XPathConstants.NODE));
 	}
 
 	/**
@@ -363,6 +478,42 @@ public class XPathBrowser {
         return getStringValues(node(), expr);
     }
 
+    /**
+     * Get the long values of all nodes that match the expression in one call.
+     *
+     * @param expr xpath expression.
+     * @param defaultValue used for nodes that are empty
+     * @return array with the values of the matching nodes
+     * @throws NumberFormatException if a value is not a long
+     */
+    public long[] getLongValues(final String expr, long defaultValue) {
+        final NodeList nodes = getNodeList(node(), expr);
+        final long[] values = new long[nodes.getLength()];
+        for (int i = 0; i < values.length; i++) {
+            String value = DomSupport.stringValue(nodes.item(i));
+            values[i] = Numbers.isBlank(value) ? defaultValue : Numbers.parseLong(value);
+        }
+        return values;
+    }
+
+    /**
+     * Get the double values of all nodes that match the expression in one call.
+     *
+     * @param expr xpath expression.
+     * @param defaultValue used for nodes that are empty, e.g. Double.NaN
+     * @return array with the values of the matching nodes
+     * @throws NumberFormatException if a value is not a double
+     */
+    public double[] getDoubleValues(final String expr, double defaultValue) {
+        final NodeList nodes = getNodeList(node(), expr);
+        final double[] values = new double[nodes.getLength()];
+        for (int i = 0; i < values.length; i++) {
+            String value = DomSupport.stringValue(nodes.item(i));
+            values[i] = Numbers.isBlank(value) ? defaultValue : Numbers.parseDouble(value);
+        }
+        return values;
+    }
+
     /**
      * Get a named sub node from the parent.
      *
@@ -382,78 +533,188 @@ public class XPathBrowser {
 	    return rootNode;
 	}
 
+    /**
+     * @param key attribute name
+     * @return the trimmed value of the attribute of the current node or empty if it is missing or blank. Plain names are read directly
+     *         from the DOM; anything else (e.g. a prefixed name) is evaluated as <code>@key</code>.
+     */
     public Optional<String> getNodeAttribute(String key) {
+        if (DomSupport.isSimpleName(key)) {
+            Attr attribute = DomSupport.attribute(rootNode, key);
+            String value = attribute == null ? null : attribute.getValue().trim();
+            return StringUtils.isBlank(value) ? Optional.empty() : Optional.of(value);
+        }
         return getString("@"+key);
     }
 
+    /**
+     * @return a sorted copy of the attributes of the current node with trimmed values.
+     */
     public Map<String,String> nodeAttributes() {
-        NamedNodeMap attributes = rootNode.getAttributes();
         TreeMap<String,String> map = new TreeMap<>();
-        if(attributes != null) {
-            attributes.getLength();
-            for(int i=0; i<attributes.getLength();i++) {
-                Node attributeNode = attributes.item(i);
-                map.put(attributeNode.getNodeName(), getString(attributeNode, ".").get());
-            }
-        }
+        NodeAttributeMap.forEach(rootNode, map::put);
         return map;
     }
 
+    /**
+     * @return read only view on the attributes of the current node that reads through to the DOM instead of copying; values are trimmed
+     *         like with {@link #nodeAttributes()} but iteration follows the DOM order.
+     */
+    public Map<String,String> attributes() {
+        return new NodeAttributeMap(rootNode);
+    }
+
+    /**
+     * Visit the attributes of the current node without creating a map.
+     *
+     * @param consumer receives the name and trimmed value of each attribute
+     */
+    public void forEachAttribute(BiConsumer<String, String> consumer) {
+        NodeAttributeMap.forEach(rootNode, consumer);
+    }
+
     public XPathBrowser browse(final Node node) {
-        return new XPathBrowser(expressionCache, node);
+        return new XPathBrowser(expressionCache, node, frozen);
     }
 
     public XPathBrowser browseFirst(String expression) {
-        return new XPathBrowser(expressionCache, getFirstNode(expression).orElseThrow(() -> new NoSuchElementException("node does not exist for " + expression)));
+        return new XPathBrowser(expressionCache, getFirstNode(expression).orElseThrow(() -> new NoSuchElementException("node does not exist for " + expression)), frozen);
+    }
+
+    /**
+     * @param expr expression that selects the nodes for the rows of the query
+     * @return query to which you add the fields for each row, see {@link XPathQuery}
+     */
+    public XPathQuery query(final String expr) {
+        return new XPathQuery(expressionCache, rootNode, expr);
     }
 
+    /**
+     * @return sized stream of browsers for the child elements of the current node
+     */
     public Stream<XPathBrowser> streamSubNodes() {
-        return StreamSupport.stream(browseSubNodes().spliterator(), false);
+        return stream(getNodeList("./*"));
+    }
+
+    /**
+     * @return parallel version of {@link #streamSubNodes()}
+     * @throws IllegalStateException if this browser is not frozen
+     */
+    public Stream<XPathBrowser> parallelStreamSubNodes() {
+        checkFrozen();
+        return streamSubNodes().parallel();
     }
 
+    /**
+     * @param expr expression
+     * @return stream of browsers for the matching nodes. The stream is sized and splits the matches by index when it is made parallel,
+     *         except on a browser that is not frozen, where simple paths are evaluated lazily so a <code>limit(n)</code> or
+     *         <code>findFirst()</code> stops at the first matches. The lazy walk finds the next match before handing out the current one, so
+     *         the current node may be removed or moved.
+     */
     public Stream<XPathBrowser> streamMatching(String expr) {
-        return StreamSupport.stream(browseMatching(expr).spliterator(), false);
+        if (frozen == null) {
+            Iterator<Node> lazy = lazyMatches(node(), expr);
+            if (lazy != null) {
+                return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new NodeIterator(lazy), Spliterator.ORDERED | Spliterator.NONNULL), false);
+            }
+        }
+        return stream(getNodeList(expr));
+    }
+
+    /**
+     * Stream the matches in parallel, e.g. to fan out per item work over the fork join pool. Only frozen browsers may be used from
+     * multiple threads, see {@link #freeze()}.
+     *
+     * @param expr expression
+     * @return parallel version of {@link #streamMatching(String)}
+     * @throws IllegalStateException if this browser is not frozen
+     */
+    public Stream<XPathBrowser> parallelStreamMatching(String expr) {
+        checkFrozen();
+        return streamMatching(expr).parallel();
+    }
+
+    private Stream<XPathBrowser> stream(NodeList nodes) {
+        return StreamSupport.stream(new NodeListSpliterator(shareable(nodes)), false).map(this::browse);
+    }
+
+    private NodeList shareable(NodeList nodes) {
+        return frozen == null ? nodes : NodeListSpliterator.threadSafe(nodes);
+    }
+
+    private void checkFrozen() {
+        if (frozen == null) {
+            throw new IllegalStateException("the document is not safe for concurrent reads; use freeze() first");
+        }
     }
 
     public Iterable<XPathBrowser> browseSubNodes() {
     	return browseMatching("./*");
     }
 
+    /**
+     * @param expr expression
+     * @return browsers for the matching nodes. The expression is evaluated once, when this method is called, so the matched nodes may be
+     *         removed or moved while iterating. Use {@link #streamMatching(String)} to stop evaluating after the first matches.
+     */
     public Iterable<XPathBrowser> browseMatching(final String expr) {
-    	final NodeList nodeList = getNodeList(node(), expr);
-    	final XPathBrowser parent = this;
-    	return new Iterable<XPathBrowser>() {
-
-			@Override
-			public Iterator<XPathBrowser> iterator() {
-				return new NodeIterator(nodeList, parent);
-			}
-		};
+        final NodeList nodeList = shareable(getNodeList(node(), expr));
+    	return () -> new NodeIterator(new NodeListIterator(nodeList));
     }
 
     public Iterator<XPathBrowser> browseMatching(final Node n, final String expr) {
-    	NodeList nodeList = getNodeList(n, expr);
-    	return new NodeIterator(nodeList, this);
+    	return new NodeIterator(new NodeListIterator(shareable(getNodeList(n, expr))));
+    }
+
+    /**
+     * @return lazy iterator over the matches or null if expr is not a simple path
+     */
+    private Iterator<Node> lazyMatches(final Node n, final String expr) {
+        if (frozen != null) {
+            frozen.checkNotModified();
+        }
+        SimpleXPathExpression simple = SimpleXPathExpression.unwrap(expressionCache.get(expr));
+        return simple == null ? null : simple.iterate(n);
+    }
+
+    private static final class NodeListIterator implements Iterator<Node> {
+        private final NodeList nodeList;
+        int i = 0;
+
+        private NodeListIterator(NodeList nodeList) {
+            this.nodeList = nodeList;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return i < nodeList.getLength();
+        }
+
+        @Override
+        public Node next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return nodeList.item(i++);
+        }
     }
 
 	private final class NodeIterator implements Iterator<XPathBrowser> {
-		private final NodeList nodeList;
-		int i=0;
+		private final Iterator<Node> nodes;
 
-		private NodeIterator(NodeList nodeList, XPathBrowser browser) {
-			this.nodeList = nodeList;
+		private NodeIterator(Iterator<Node> nodes) {
+			this.nodes = nodes;
 		}
 
 		@Override
 		public boolean hasNext() {
-			boolean hasNext = i<nodeList.getLength();
-
-			return hasNext;
+			return nodes.hasNext();
 		}
 
 		@Override
 		public XPathBrowser next() {
-		    return new XPathBrowser(expressionCache, nodeList.item(i++));
+		    return new XPathBrowser(expressionCache, nodes.next(), frozen);
 		}
 
 		@Override
@@ -23,8 +23,9 @@ package io.inbot.xmltools;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.inbot.xmltools.exceptions.RethrownException;
 import java.util.Iterator;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -35,69 +36,156 @@ import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 /**
- * Per thread caching of xpath expressions. Compiling expressions is way more expensive than reusing them. Unfortunately, they are
- * not thread safe. So this class provides a per thread cache of XPathExpression. The thread cache uses the thread ids for storing the
- * per thread expresssion cache. Each expression is stored with the uncompiled string as its key.
+ * Process wide cache of compiled xpath expressions. Compiling expressions is way more expensive than reusing them. Unfortunately,
+ * XPathExpression and XPath are not thread safe. So this class caches a {@link CompiledXPath} per expression string. Each of those keeps
+ * a small pool of compiled instances and borrows one for the duration of an evaluation.
  *
+ * Each expression is compiled once; extra instances are only compiled when multiple threads evaluate the same expression at the same time.
+ * So memory and compilation cost are proportional to the number of expressions and not to the number of threads. Compilation uses a pool of
+ * XPath instances so that is thread safe as well.
+ *
+ * Trivial expressions like <code>@id</code>, <code>./name</code> or <code>item/price</code> are evaluated by walking the DOM directly, which
+ * avoids the considerable per evaluation overhead of the xpath engine.
  */
 public class XPathExpressionCache {
 
-	private final LoadingCache<Long,Cache<String, XPathExpression>> perThreadCaches;
+    private static final NamespaceContext NAMESPACE_CONTEXT = new NamespaceContext() {
 
-    private final XPath xpath;
+        @Override
+        public String getNamespaceURI(String prefix) {
+            // hack to keep xpath happy
+            return "http://domain.com/" + prefix;
+        }
 
-	public XPathExpressionCache(int threadCacheSize, int threadCacheExpireMinutes, final int cacheSize, final int evictionOfUnusedInMinutes) {
-	    // return a cache of caches
-	    perThreadCaches=CacheBuilder.newBuilder()
-	        .maximumSize(threadCacheSize)
-            .expireAfterAccess(threadCacheExpireMinutes, TimeUnit.MINUTES)
-	        .build(new CacheLoader<Long, Cache<String, XPathExpression>>() {
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Iterator getPrefixes(String val) {
+            // Dummy implementation - not used!
+            return null;
+        }
 
-                @Override
-                public Cache<String, XPathExpression> load(Long id) throws Exception {
-                    return CacheBuilder.newBuilder()
-                        .maximumSize(cacheSize)
-                        .expireAfterAccess(evictionOfUnusedInMinutes, TimeUnit.MINUTES)
-                        .<String, XPathExpression>build();
-                }
-            }
-	        );
+        @Override
+        public String getPrefix(String uri) {
+            // Dummy implementation - not used!
+            return null;
+        }
+    };
 
-	       final XPathFactory xpf = XPathFactory.newInstance();
+    private final Cache<String, CompiledXPath> expressions;
 
-        xpath = xpf.newXPath();
-        xpath.setNamespaceContext(new NamespaceContext() {
+    private final ObjectPool<XPath> xpaths;
 
-            @Override
-			public String getNamespaceURI(String prefix) {
-                // hack to keep xpath happy
-                return "http://domain.com/" + prefix;
-            }
+    private final XPathFactory xPathFactory;
 
-            @Override
-			@SuppressWarnings("rawtypes")
-            public Iterator getPrefixes(String val) {
-                // Dummy implementation - not used!
-                return null;
-            }
+    private final int instancesPerExpression;
 
-            @Override
-			public String getPrefix(String uri) {
-                // Dummy implementation - not used!
-                return null;
-            }
+    private final MetricsListener metrics;
+
+    /**
+     * Constructor kept for compatibility with the old per thread cache.
+     *
+     * @param threadCacheSize maximum number of idle compiled instances kept per expression
+     * @param threadCacheExpireMinutes not used
+     * @param cacheSize maximum number of expressions in the cache
+     * @param evictionOfUnusedInMinutes expressions that are not used for this amount of minutes are evicted
+     */
+    public XPathExpressionCache(int threadCacheSize, int threadCacheExpireMinutes, final int cacheSize, final int evictionOfUnusedInMinutes) {
+        this(cacheSize, evictionOfUnusedInMinutes, threadCacheSize);
+    }
+
+    /**
+     * @param cacheSize maximum number of expressions in the cache
+     * @param evictionOfUnusedInMinutes expressions that are not used for this amount of minutes are evicted
+     * @param instancesPerExpression maximum number of idle compiled instances kept per expression; use the number of threads that
+     *        typically evaluate the same expression concurrently.
+     */
+    public XPathExpressionCache(final int cacheSize, final int evictionOfUnusedInMinutes, int instancesPerExpression) {
+        this(cacheSize, evictionOfUnusedInMinutes, instancesPerExpression, MetricsListener.NOOP);
+    }
+
+    /**
+     * @param cacheSize maximum number of expressions in the cache
+     * @param evictionOfUnusedInMinutes expressions that are not used for this amount of minutes are evicted
+     * @param instancesPerExpression maximum number of idle compiled instances kept per expression; use the number of threads that
+     *        typically evaluate the same expression concurrently.
+     * @param metrics listener for cache, compilation and evaluation events
+     */
+    public XPathExpressionCache(final int cacheSize, final int evictionOfUnusedInMinutes, int instancesPerExpression, MetricsListener metrics) {
+        this.instancesPerExpression = instancesPerExpression;
+        this.metrics = metrics;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterAccess(evictionOfUnusedInMinutes, TimeUnit.MINUTES);
+        if (metrics != MetricsListener.NOOP) {
+            builder.removalListener((RemovalListener<String, CompiledXPath>) notification -> {
+                if (notification.wasEvicted()) {
+                    metrics.expressionEvicted(notification.getKey());
+                }
+            });
+        }
+        expressions = builder.<String, CompiledXPath>build();
+
+        xPathFactory = XPathFactory.newInstance();
+        // we never change the state of the pooled XPath instances, so there is nothing to reset
+        xpaths = new ObjectPool<>(instancesPerExpression, this::newXPath, xpath -> {
         });
-	}
+    }
 
-	public XPathExpression getExpression(final String expression) throws XPathExpressionException {
+    /**
+     * @param expression xpath expression
+     * @return thread safe compiled expression
+     * @throws RethrownException wrapping the XPathExpressionException if the expression does not compile
+     */
+    public CompiledXPath get(final String expression) {
+        if (metrics != MetricsListener.NOOP) {
+            CompiledXPath cached = expressions.getIfPresent(expression);
+            if (cached != null) {
+                metrics.expressionCacheHit(expression);
+                return cached;
+            }
+            metrics.expressionCacheMiss(expression);
+        }
         try {
-            return perThreadCaches.get(Thread.currentThread().getId()).get(expression, () ->xpath.compile(expression));
-		} catch (ExecutionException e) {
-			if(e.getCause() instanceof XPathExpressionException) {
-				throw (XPathExpressionException)e.getCause();
-			} else {
-				throw new IllegalStateException(e.getCause());
-			}
-		}
+            return expressions.get(expression, () -> {
+                CompiledXPath compiled = new PooledXPathExpression(this, expression, instancesPerExpression);
+                compiled = SimpleXPathExpression.tryCreate(expression, compiled).orElse(compiled);
+                return metrics == MetricsListener.NOOP ? compiled : new MeasuredXPath(compiled, metrics);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw RethrownException.rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * @param expression xpath expression
+     * @return a newly compiled expression that is owned by the caller; it is not cached. Note that XPathExpression is not thread safe.
+     * @throws XPathExpressionException if the expression does not compile
+     * @deprecated use {@link #get(String)}, which returns a cached, thread safe {@link CompiledXPath}.
+     */
+    @Deprecated
+    public XPathExpression getExpression(final String expression) throws XPathExpressionException {
+        return compile(expression);
+    }
+
+    XPathExpression compile(String expression) throws XPathExpressionException {
+        long start = System.nanoTime();
+        XPath xpath = xpaths.borrow();
+        try {
+            XPathExpression compiled = xpath.compile(expression);
+            metrics.expressionCompiled(expression, System.nanoTime() - start);
+            return compiled;
+        } finally {
+            xpaths.release(xpath);
+        }
+    }
+
+    private XPath newXPath() {
+        XPath xpath;
+        // XPathFactory is not thread safe
+        synchronized (xPathFactory) {
+            xpath = xPathFactory.newXPath();
+        }
+        xpath.setNamespaceContext(NAMESPACE_CONTEXT);
+        return xpath;
     }
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.xml.xpath.XPathConstants;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Query that selects nodes with an outer expression and extracts a number of fields from each of them as a flat row. Get instances from
+ * {@link XPathBrowser#query(String)}.
+ *
+ * <pre>
+ * List&lt;String[]&gt; rows = browser.query("/feed/item").field("@id").field("name").field("offer/price").rows();
+ * </pre>
+ *
+ * This does the same as <code>browser.streamMatching("/feed/item").map(item -&gt; ...item.getString("name")...)</code> but the whole query is
+ * planned once: the outer expression is evaluated once and the fields of each match are extracted with a {@link RecordExtractor}, which
+ * merges simple relative paths into a single walk over the match. No browsers are created for the matches.
+ *
+ * Instances are immutable and thread safe; {@link #field(String)} returns a new query.
+ */
+public class XPathQuery {
+
+    private final XPathExpressionCache cache;
+    private final Node context;
+    private final String path;
+    private final List<String> fields;
+    private final RecordExtractor<String[]> extractor;
+
+    XPathQuery(XPathExpressionCache cache, Node context, String path) {
+        this(cache, context, path, Collections.<String>emptyList(), new RecordExtractor<String[]>(cache));
+    }
+
+    private XPathQuery(XPathExpressionCache cache, Node context, String path, List<String> fields, RecordExtractor<String[]> extractor) {
+        this.cache = cache;
+        this.context = context;
+        this.path = path;
+        this.fields = fields;
+        this.extractor = extractor;
+    }
+
+    /**
+     * @param expression expression relative to the matches of the outer expression
+     * @return a new query with an additional column for the field
+     */
+    public XPathQuery field(String expression) {
+        List<String> newFields = new ArrayList<>(fields);
+        newFields.add(expression);
+        final int column = fields.size();
+        return new XPathQuery(cache, context, path, Collections.unmodifiableList(newFields),
+                extractor.field(expression, FieldType.STRING, (row, value) -> row[column] = value));
+    }
+
+    /**
+     * @return the field expressions, in column order
+     */
+    public List<String> fields() {
+        return fields;
+    }
+
+    /**
+     * @return a row for each match, in document order. Each row has a trimmed value or null for each of the fields.
+     */
+    public List<String[]> rows() {
+        NodeList matches = matches();
+        List<String[]> rows = new ArrayList<>(matches.getLength());
+        for (int i = 0; i < matches.getLength(); i++) {
+            rows.add(extractor.extract(matches.item(i), new String[fields.size()]));
+        }
+        return rows;
+    }
+
+    /**
+     * @return lazy stream with the rows; fields are only extracted for the matches that are consumed.
+     */
+    public Stream<String[]> stream() {
+        NodeList matches = matches();
+        Spliterator<String[]> spliterator = new Spliterators.AbstractSpliterator<String[]>(matches.getLength(),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.SIZED) {
+            int i = 0;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super String[]> action) {
+                if (i >= matches.getLength()) {
+                    return false;
+                }
+                action.accept(extractor.extract(matches.item(i++), new String[fields.size()]));
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    private NodeList matches() {
+        return (NodeList) cache.get(path).evaluate(context, XPathConstants.NODESET);
+    }
+}
@@ -1,18 +1,34 @@
 package io.inbot.xmltools;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 public class XpathBrowserFactory {
 
     private final PooledXmlParser parser;
     private final XPathExpressionCache cache;
+    private final Supplier<AsyncXmlParser> asyncParser;
 
     public XpathBrowserFactory(PooledXmlParser parser, XPathExpressionCache cache) {
         this.parser = parser;
         this.cache = cache;
+        asyncParser = Suppliers.memoize(() -> async(AsyncXmlParser.defaultExecutor(), Runtime.getRuntime().maxMemory() / 32, 10000));
     }
 
     public XPathBrowser browse(Reader r) {
@@ -27,8 +43,160 @@ public class XpathBrowserFactory {
         return new XPathBrowser(cache, parser.parseXml(xml));
     }
 
+    /**
+     * @param file xml file, parsed with {@link PooledXmlParser#parseXml(Path)}
+     * @return browser for the document
+     */
+    public XPathBrowser browse(Path file) {
+        return new XPathBrowser(cache, parser.parseXml(file));
+    }
+
     public XPathBrowser browse(final Node node) {
         return new XPathBrowser(cache, node);
     }
 
+    /**
+     * @param expressions expressions that are evaluated against each document of a batch
+     * @return evaluator that can be reused for any number of batches
+     */
+    public BatchEvaluator batchEvaluator(String... expressions) {
+        return new BatchEvaluator(parser, cache, expressions);
+    }
+
+    /**
+     * @param maximumWeightInBytes upper bound for the estimated heap use of the cached documents
+     * @param timeToLive cached documents are parsed again after this time
+     * @param unit unit of timeToLive
+     * @return a cache of parsed documents that uses this factory's parser and expression cache
+     */
+    public DocumentCache documentCache(long maximumWeightInBytes, long timeToLive, TimeUnit unit) {
+        return new DocumentCache(parser, cache, maximumWeightInBytes, timeToLive, unit);
+    }
+
+    /**
+     * @return the async parser of this factory. It is created on first use and every call returns the same instance, so all callers share
+     *         its admission control. It uses a shared pool with a thread per processor and admits up to 1/32 of the maximum heap size of
+     *         input at a time, which leaves room for DOMs several times the size of their input.
+     */
+    public AsyncXmlParser async() {
+        return asyncParser.get();
+    }
+
+    /**
+     * @param executor executor that runs the parses
+     * @param maxBytesInFlight maximum number of bytes of input parsed at the same time
+     * @param maxQueued maximum number of requests waiting for admission; further requests fail
+     * @return async parser that uses this factory's parser and expression cache
+     */
+    public AsyncXmlParser async(Executor executor, long maxBytesInFlight, int maxQueued) {
+        return new AsyncXmlParser(parser, cache, executor, maxBytesInFlight, maxQueued);
+    }
+
+    /**
+     * Split a (huge) document into records and browse them one at a time. For every element that matches recordPath, a small DOM is built
+     * from a streaming parse. The returned browser is positioned on the record element, so relative expressions work just like they do on
+     * the browsers returned by {@link XPathBrowser#streamMatching(String)}. Memory use is bounded by the largest record rather than by the
+     * size of the document.
+     *
+     * The stream is lazy and sequential. It closes the underlying parser when it is exhausted or closed; the input stream is not closed.
+     *
+     * @param is input
+     * @param encoding encoding of the input
+     * @param recordPath a simple path (see {@link StreamingXPathEvaluator}) selecting the record elements, e.g. /feed/item
+     * @return lazy stream of browsers for each of the records
+     */
+    public Stream<XPathBrowser> browseRecords(InputStream is, Charset encoding, String recordPath) {
+        return browseRecords(StaxSupport.createReader(is, encoding.name()), recordPath);
+    }
+
+    /**
+     * Reader variant of {@link #browseRecords(InputStream, Charset, String)}.
+     *
+     * @param r input
+     * @param recordPath a simple path selecting the record elements, e.g. /feed/item
+     * @return lazy stream of browsers for each of the records
+     */
+    public Stream<XPathBrowser> browseRecords(Reader r, String recordPath) {
+        return browseRecords(StaxSupport.createReader(r), recordPath);
+    }
+
+    /**
+     * Memory mapped file variant of {@link #browseRecords(InputStream, Charset, String)}. The encoding is detected from the document. Close
+     * the stream to release the file.
+     *
+     * @param file xml file
+     * @param recordPath a simple path selecting the record elements, e.g. /feed/item
+     * @return lazy stream of browsers for each of the records
+     */
+    public Stream<XPathBrowser> browseRecords(Path file, String recordPath) {
+        MappedFileInputStream inputStream;
+        try {
+            inputStream = new MappedFileInputStream(file);
+        } catch (IOException e) {
+            throw RethrownException.rethrow(e);
+        }
+        try {
+            return browseRecords(StaxSupport.createReader(inputStream), recordPath).onClose(() -> {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    throw RethrownException.rethrow(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            try {
+                inputStream.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Push style variant of {@link #browseRecords(InputStream, Charset, String)} for xml that arrives in chunks. Uses a shared pool of
+     * daemon threads, detects the encoding and buffers up to 1MB of input.
+     *
+     * @param recordPath a simple path selecting the record elements, e.g. /feed/item
+     * @param consumer receives each record as soon as it has been fed completely
+     * @return parser to feed the chunks to
+     */
+    public IncrementalRecordParser incrementalRecords(String recordPath, Consumer<? super XPathBrowser> consumer) {
+        return incrementalRecords(recordPath, null, IncrementalRecordParser.defaultExecutor(), 1024 * 1024, consumer);
+    }
+
+    /**
+     * @param recordPath a simple path selecting the record elements, e.g. /feed/item
+     * @param encoding encoding of the input or null to detect it from the document
+     * @param executor runs the parser; it keeps a thread busy until the document is finished
+     * @param maxBufferedBytes feeding blocks while more than this number of bytes are waiting to be parsed
+     * @param consumer receives each record as soon as it has been fed completely; it is called on a thread of the executor
+     * @return parser to feed the chunks to
+     */
+    public IncrementalRecordParser incrementalRecords(String recordPath, Charset encoding, Executor executor, long maxBufferedBytes,
+            Consumer<? super XPathBrowser> consumer) {
+        return new IncrementalRecordParser(parser, cache, recordPath, encoding, executor, maxBufferedBytes, consumer);
+    }
+
+    private Stream<XPathBrowser> browseRecords(XMLStreamReader reader, String recordPath) {
+        RecordReader records;
+        try {
+            records = new RecordReader(reader, SimplePath.parse(recordPath), parser);
+        } catch (IllegalArgumentException e) {
+            StaxSupport.closeQuietly(reader);
+            throw e;
+        }
+        Spliterator<XPathBrowser> spliterator = new Spliterators.AbstractSpliterator<XPathBrowser>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super XPathBrowser> action) {
+                Document record = records.next();
+                if (record == null) {
+                    return false;
+                }
+                action.accept(new XPathBrowser(cache, record.getDocumentElement()));
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(records::close);
+    }
 }
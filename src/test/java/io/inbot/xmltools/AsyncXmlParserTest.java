@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+
+@Test
+public class AsyncXmlParserTest {
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    /**
+     * Runs tasks only when the test says so.
+     */
+    private static class ManualExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runNext() {
+            tasks.poll().run();
+        }
+    }
+
+    private static byte[] xml(int id) {
+        return ("<root><id>" + id + "</id><padding>0123456789012345678901234567890123456789</padding></root>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void shouldParseInTheBackground() throws Exception {
+        AsyncXmlParser async = xpbf.async();
+        List<CompletableFuture<XPathBrowser>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(async.browse(xml(i)));
+        }
+        futures.add(async.browse("<root><id>100</id></root>"));
+        for (int i = 0; i < futures.size(); i++) {
+            assertThat(futures.get(i).get().getInt("/root/id", -1), equalTo(i));
+        }
+        assertThat(async.bytesInFlight(), equalTo(0L));
+    }
+
+    public void shouldShareTheDefaultParser() {
+        assertThat(xpbf.async() == xpbf.async(), equalTo(true));
+    }
+
+    public void shouldReleaseTheBudgetBeforeCompleting() throws Exception {
+        AsyncXmlParser async = xpbf.async();
+        for (int i = 0; i < 500; i++) {
+            assertThat(async.browse(xml(i)).get().getInt("/root/id", -1), equalTo(i));
+            assertThat(async.bytesInFlight(), equalTo(0L));
+        }
+    }
+
+    public void shouldAdmitDocumentsWithinTheByteBudget() {
+        ManualExecutor executor = new ManualExecutor();
+        int size = xml(0).length;
+        AsyncXmlParser async = xpbf.async(executor, 2 * size, 10);
+        List<CompletableFuture<Document>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(async.parseXml(xml(i)));
+        }
+        assertThat(executor.tasks.size(), equalTo(2));
+        assertThat(async.queued(), equalTo(3));
+        assertThat(async.bytesInFlight(), equalTo(2L * size));
+
+        executor.runNext();
+        assertThat(futures.get(0).isDone(), equalTo(true));
+        // the first queued document takes the freed up space
+        assertThat(executor.tasks.size(), equalTo(2));
+        assertThat(async.queued(), equalTo(2));
+        while (!executor.tasks.isEmpty()) {
+            executor.runNext();
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertThat(futures.get(i).join().getDocumentElement().getFirstChild().getTextContent(), equalTo("" + i));
+        }
+        assertThat(async.bytesInFlight(), equalTo(0L));
+    }
+
+    public void shouldParseOversizedDocumentsOnTheirOwn() {
+        ManualExecutor executor = new ManualExecutor();
+        AsyncXmlParser async = xpbf.async(executor, 10, 10);
+        CompletableFuture<Document> first = async.parseXml(xml(1));
+        CompletableFuture<Document> second = async.parseXml(xml(2));
+        assertThat(executor.tasks.size(), equalTo(1));
+        executor.runNext();
+        assertThat(executor.tasks.size(), equalTo(1));
+        executor.runNext();
+        assertThat(first.isDone() && second.isDone(), equalTo(true));
+    }
+
+    public void shouldRejectWhenTheQueueIsFull() throws InterruptedException {
+        ManualExecutor executor = new ManualExecutor();
+        AsyncXmlParser async = xpbf.async(executor, xml(0).length, 1);
+        async.parseXml(xml(0));
+        async.parseXml(xml(1));
+        CompletableFuture<Document> rejected = async.parseXml(xml(2));
+        try {
+            rejected.get();
+            throw new AssertionError("should have been rejected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+    }
+
+    public void shouldReleaseCapacityWhenParsingFails() throws InterruptedException {
+        ManualExecutor executor = new ManualExecutor();
+        AsyncXmlParser async = xpbf.async(executor, 100, 10);
+        CompletableFuture<Document> invalid = async.parseXml("<root>");
+        executor.runNext();
+        try {
+            invalid.get();
+            throw new AssertionError("should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RuntimeException.class));
+        }
+        assertThat(async.bytesInFlight(), equalTo(0L));
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.testng.annotations.Test;
+import org.xml.sax.InputSource;
+
+@Test
+public class BatchEvaluatorTest {
+
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    private final BatchEvaluator evaluator = xpbf.batchEvaluator("/item/@id", "/item/name", "/item/price", "count(/item/tag)");
+
+    public void shouldEvaluateColumns() {
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            documents.add("<item id='" + i + "'><name> item " + i + " </name>" + (i % 2 == 0 ? "<price>" + i + ".5</price>" : "") + "<tag/><tag/></item>");
+        }
+        BatchResult result = evaluator.evaluate(documents);
+        assertThat(result.size(), equalTo(100));
+        assertThat(result.expressions(), equalTo(Arrays.asList("/item/@id", "/item/name", "/item/price", "count(/item/tag)")));
+        assertThat(result.longColumn("/item/@id", -1)[42], equalTo(42L));
+        assertThat(result.get(3, "/item/name"), equalTo("item 3"));
+        assertThat(result.column(2)[2], equalTo("2.5"));
+        assertThat(result.column("/item/price")[3], nullValue());
+        assertThat(Double.isNaN(result.doubleColumn("/item/price", Double.NaN)[3]), equalTo(true));
+        assertThat(result.longColumn("count(/item/tag)", -1)[99], equalTo(2L));
+    }
+
+    public void shouldCountRowsWithoutExpressions() {
+        BatchResult result = xpbf.batchEvaluator().evaluate(Arrays.asList("<item/>", "<item/>"));
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.expressions().isEmpty(), equalTo(true));
+    }
+
+    public void shouldMatchXPathBrowser() {
+        List<String> documents = Arrays.asList("<item id='1'><name>a</name></item>", "<item><name/></item>", "<other/>");
+        BatchResult result = evaluator.evaluate(documents);
+        for (int row = 0; row < documents.size(); row++) {
+            XPathBrowser browser = xpbf.browse(documents.get(row));
+            for (String expression : evaluator.expressions()) {
+                assertThat(result.get(row, expression), equalTo(browser.getString(expression).orElse(null)));
+            }
+        }
+    }
+
+    public void shouldEvaluateOtherInputs() {
+        List<String> documents = Arrays.asList("<item id='1'/>", "<item id='2'/>");
+        List<byte[]> bytes = documents.stream().map(d -> d.getBytes(StandardCharsets.UTF_8)).collect(Collectors.toList());
+        assertThat(evaluator.evaluateBytes(bytes).column("/item/@id"), equalTo(new String[] { "1", "2" }));
+        assertThat(evaluator.evaluate(documents, d -> new InputSource(new StringReader(d))).column("/item/@id"), equalTo(new String[] { "1", "2" }));
+        assertThat(evaluator.evaluateDocuments(documents.stream().map(d -> xpbf.browse(d).node()).collect(Collectors.toList())).column("/item/@id"),
+                equalTo(new String[] { "1", "2" }));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectUnknownColumn() {
+        evaluator.evaluate(Arrays.asList("<item/>")).column("/item/idontexist");
+    }
+
+    @Test(expectedExceptions = RethrownException.class)
+    public void shouldFailOnInvalidDocument() {
+        evaluator.evaluate(Arrays.asList("<item/>", "<item>"));
+    }
+}
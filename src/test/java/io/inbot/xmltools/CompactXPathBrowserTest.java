@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@Test
+public class CompactXPathBrowserTest {
+
+    private static final String[] EXPRESSIONS = {
+            ".",
+            "/feed/title",
+            "feed/title",
+            "/feed/item/name",
+            "/feed/item/@id",
+            "//item/@id",
+            "//item/name",
+            "/feed/item[2]/name",
+            "/feed/item[@type='book']/price",
+            "/feed/item[@type='book'][@id='3']/name",
+            "/feed/*[3]/@id",
+            "//tags/tag",
+            "//tag[2]",
+            "/feed/item//tag",
+            "//item//name",
+            "/feed/item/name/text()",
+            "/feed/item/extra",
+            "/feed/item[@missing]/name",
+            "/feed/idontexist",
+            "name",
+            "./tags/tag",
+            ".//name",
+            "@id",
+            "*"
+    };
+
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    @DataProvider
+    public Object[][] expressions() {
+        Object[][] result = new Object[EXPRESSIONS.length][];
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            result[i] = new Object[] { EXPRESSIONS[i] };
+        }
+        return result;
+    }
+
+    @Test(dataProvider = "expressions")
+    public void shouldMatchXPathBrowser(String expression) {
+        XPathBrowser browser = xpbf.browse(feed(), StandardCharsets.UTF_8);
+        CompactXPathBrowser compact = CompactDocument.parse(feed()).browse();
+        assertThat(compact.getString(expression), equalTo(browser.getString(expression)));
+        assertThat(compact.getStringValues(expression), equalTo(browser.getStringValues(expression)));
+        List<XPathBrowser> items = browser.streamMatching("/feed/item").collect(Collectors.toList());
+        List<CompactXPathBrowser> compactItems = compact.streamMatching("/feed/item").collect(Collectors.toList());
+        assertThat(compactItems.size(), equalTo(items.size()));
+        for (int i = 0; i < items.size(); i++) {
+            assertThat(compactItems.get(i).getString(expression), equalTo(items.get(i).getString(expression)));
+            assertThat(compactItems.get(i).getStringValues(expression), equalTo(items.get(i).getStringValues(expression)));
+        }
+    }
+
+    public void shouldSupportTypedGetters() {
+        CompactXPathBrowser browser = CompactDocument.parse(this.getClass().getResourceAsStream("/test.xml")).browse();
+        assertThat(browser.getString("/root/string").get(), equalTo("foo"));
+        assertThat(browser.getString("/root/noString").isPresent(), equalTo(false));
+        assertThat(browser.getDouble("/root/double").get(), equalTo(0.42));
+        assertThat(browser.getLong("/root/long").get(), equalTo(42L));
+        assertThat(browser.getInt("/root/long").get(), equalTo(42));
+        assertThat(browser.getBoolean("/root/bool"), equalTo(true));
+        assertThat(browser.getBigDecimal(Locale.ROOT, "/root/double").get().toString(), equalTo("0.42"));
+        assertThat(browser.count("/root/list/item"), equalTo(2));
+        assertThat(browser.getLong("/root/long", -1), equalTo(42L));
+        assertThat(browser.getLong("/root/noString", -1), equalTo(-1L));
+        assertThat(browser.getAsDouble("/root/double").getAsDouble(), equalTo(0.42));
+        assertThat(browser.getAsInt("/root/idontexist").isPresent(), equalTo(false));
+        assertThat(browser.getLongValues("/root/list/item", -1), equalTo(new long[] { 1, 2 }));
+        assertThat(browser.browseFirst("/root/list").streamSubNodes().map(item -> item.getInt().get()).collect(Collectors.toList()),
+                equalTo(Arrays.asList(1, 2)));
+        CompactXPathBrowser attrNode = browser.browseFirst("/root/attrnode");
+        assertThat(attrNode.name(), equalTo("attrnode"));
+        assertThat(attrNode.nodeAttributes().toString(), equalTo("{bar=foo, foo=bar}"));
+        assertThat(attrNode.getNodeAttribute("foo").get(), equalTo("bar"));
+    }
+
+    public void shouldHandleNamespacesAndMixedContent() {
+        CompactXPathBrowser browser = CompactDocument.parse("<a:root xmlns:a='urn:a' a:x='1' y='2'>one<b>two</b><!-- c -->three<![CDATA[four]]></a:root>")
+            .browse();
+        assertThat(browser.getString("/root").get(), equalTo("onetwothreefour"));
+        assertThat(browser.getStringValues("/root/text()"), equalTo(new String[] { "one", "threefour" }));
+        assertThat(browser.browseFirst("/root").name(), equalTo("a:root"));
+        assertThat(browser.getString("/root/@x").get(), equalTo("1"));
+        assertThat(browser.browseFirst("/root").nodeAttributes().toString(), equalTo("{a:x=1, y=2}"));
+        assertThat(browser.browseFirst("/root").getNodeAttribute("x").get(), equalTo("1"));
+        assertThat(browser.browseFirst("/root").getNodeAttribute("z").isPresent(), equalTo(false));
+        StringBuilder visited = new StringBuilder();
+        browser.browseFirst("/root").forEachAttribute((name, value) -> visited.append(name).append('=').append(value).append(';'));
+        assertThat(visited.toString(), equalTo("a:x=1;y=2;"));
+    }
+
+    public void shouldReturnChildrenOfNestedContextsInDocumentOrder() {
+        String xml = "<root><a><b>1</b><a><b>2</b></a><b>3</b></a><a><b>4</b></a></root>";
+        XPathBrowser browser = xpbf.browse(xml);
+        CompactXPathBrowser compact = CompactDocument.parse(xml).browse();
+        for (String expression : new String[] { "//a/b", "/root//a/b", "//a/*", "//b" }) {
+            assertThat(expression, compact.getStringValues(expression), equalTo(browser.getStringValues(expression)));
+        }
+        assertThat(compact.getStringValues("//a/b"), equalTo(new String[] { "1", "2", "3", "4" }));
+    }
+
+    public void shouldBeSmallerThanTheText() {
+        StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<item id='").append(i).append("'><title>Title ").append(i).append("</title><description>Some text about item ").append(i)
+                .append("</description></item>");
+        }
+        xml.append("</feed>");
+        CompactDocument document = CompactDocument.parse(xml.toString());
+        assertThat(document.elementCount(), equalTo(3001));
+        assertThat(document.estimatedSizeInBytes(), lessThan(2L * xml.length()));
+        assertThat(document.browse().getString("/feed/item[1000]/title").get(), equalTo("Title 999"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectUnsupportedExpressions() {
+        CompactDocument.parse("<root/>").browse().getString("count(/root)");
+    }
+
+    private InputStream feed() {
+        return this.getClass().getResourceAsStream("/test_feed.xml");
+    }
+}
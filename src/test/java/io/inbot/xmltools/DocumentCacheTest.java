@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.google.common.base.Ticker;
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.annotations.Test;
+
+@Test
+public class DocumentCacheTest {
+    private final PooledXmlParser parser = new PooledXmlParser(20, 20);
+    private final XPathExpressionCache expressionCache = new XPathExpressionCache(20, 10000, 1000, 20);
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(parser, expressionCache);
+
+    public void shouldParseHotDocumentsOnce() {
+        DocumentCache cache = xpbf.documentCache(10_000_000, 1, TimeUnit.HOURS);
+        XPathBrowser first = cache.browse("<root><a>1</a></root>");
+        XPathBrowser second = cache.browse("<root><a>1</a></root>");
+        assertThat(second == first, equalTo(true));
+        assertThat(second.getInt("/root/a", -1), equalTo(1));
+        assertThat(cache.browse("<root><a>2</a></root>").getInt("/root/a", -1), equalTo(2));
+        // same content as bytes is a different entry because the bytes are decoded by the parser
+        assertThat(cache.browse("<root><a>1</a></root>".getBytes(StandardCharsets.UTF_8)).getInt("/root/a", -1), equalTo(1));
+        assertThat(cache.stats().hitCount(), equalTo(1L));
+        assertThat(cache.stats().loadCount(), equalTo(3L));
+        assertThat(cache.size(), equalTo(3L));
+    }
+
+    public void shouldUseCallerSuppliedKeys() {
+        DocumentCache cache = xpbf.documentCache(10_000_000, 1, TimeUnit.HOURS);
+        AtomicInteger opened = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            XPathBrowser browser = cache.browse("catalog.xml", () -> {
+                opened.incrementAndGet();
+                return new ByteArrayInputStream("<catalog><product id='42'/></catalog>".getBytes(StandardCharsets.UTF_8));
+            });
+            assertThat(browser.getString("/catalog/product/@id").get(), equalTo("42"));
+        }
+        assertThat(opened.get(), equalTo(1));
+        cache.invalidate("catalog.xml");
+        cache.browse("catalog.xml", () -> new ByteArrayInputStream("<catalog/>".getBytes(StandardCharsets.UTF_8)));
+        assertThat(cache.stats().missCount(), equalTo(2L));
+    }
+
+    public void shouldEvictByEstimatedSize() {
+        StringBuilder big = new StringBuilder("<root>");
+        for (int i = 0; i < 1000; i++) {
+            big.append("<item id='").append(i).append("'>item ").append(i).append("</item>");
+        }
+        big.append("</root>");
+        long bigSize = DomSupport.expand(parser.parseXml(big.toString()));
+        long smallSize = DomSupport.expand(parser.parseXml("<root>small</root>"));
+        assertThat(bigSize > 100 * smallSize, equalTo(true));
+
+        DocumentCache cache = new DocumentCache(parser, expressionCache, bigSize + 10 * smallSize, 1, TimeUnit.HOURS);
+        cache.browse(big.toString());
+        cache.browse("<root>small</root>");
+        assertThat(cache.size(), equalTo(2L));
+        // a second big document does not fit next to the first one
+        cache.browse(big.toString().replace("item 1", "item one"));
+        assertThat(cache.size() < 3, equalTo(true));
+        assertThat(cache.stats().evictionCount() > 0, equalTo(true));
+    }
+
+    public void shouldExpireAfterTimeToLive() {
+        AtomicLong nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        DocumentCache cache = new DocumentCache(parser, expressionCache, 10_000_000, 1, TimeUnit.MINUTES, ticker);
+        XPathBrowser browser = cache.browse("<root/>");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertThat(cache.browse("<root/>") == browser, equalTo(true));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertThat(cache.browse("<root/>") == browser, equalTo(false));
+        assertThat(cache.stats().loadCount(), equalTo(2L));
+    }
+
+    @Test(expectedExceptions = RethrownException.class)
+    public void shouldNotCacheInvalidXml() {
+        DocumentCache cache = xpbf.documentCache(10_000_000, 1, TimeUnit.HOURS);
+        try {
+            cache.browse("<root>");
+        } finally {
+            assertThat(cache.size(), equalTo(0L));
+        }
+    }
+
+    public void shouldShareCachedBrowsersBetweenThreads() throws Exception {
+        StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < 500; i++) {
+            xml.append("<item id='").append(i).append("'><name>item ").append(i).append("</name><price>").append(i).append(".5</price></item>");
+        }
+        xml.append("</root>");
+        DocumentCache cache = xpbf.documentCache(100_000_000, 1, TimeUnit.HOURS);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Double>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> {
+                    XPathBrowser browser = cache.browse(xml.toString());
+                    double sum = 0;
+                    for (XPathBrowser item : browser.browseMatching("/root/item")) {
+                        sum += item.getDouble("price", 0) + item.getInt("@id", 0);
+                    }
+                    return sum + browser.getDouble("sum(//price)", 0);
+                }));
+            }
+            double expected = 2 * (500 * 499 / 2 + 250) + 500 * 499 / 2;
+            for (Future<Double> future : futures) {
+                assertThat(future.get(), equalTo(expected));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(cache.stats().loadCount(), equalTo(1L));
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+@Test
+public class FrozenDocumentTest {
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    private static String xml(int items) {
+        StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < items; i++) {
+            xml.append("<item id='").append(i).append("'><name>item ").append(i).append("</name><price>").append(i % 20)
+                .append("</price><tags><tag>a</tag><tag>b</tag></tags></item>");
+        }
+        return xml.append("</root>").toString();
+    }
+
+    private static String summarize(XPathBrowser browser) {
+        StringBuilder summary = new StringBuilder();
+        summary.append(browser.getInt("count(//item[price > 10])", -1)).append(';');
+        summary.append(browser.getDouble("sum(//price)", -1)).append(';');
+        summary.append(browser.getString("/root/item[last()]/name").orElse("")).append(';');
+        browser.streamMatching("/root/item").forEach(item -> {
+            summary.append(item.getNodeAttribute("id").orElse("")).append(',').append(item.getString("name").orElse("")).append(',')
+                .append(item.getStringValues("tags/tag").length).append(',').append(item.nodeAttributes().size()).append(';');
+        });
+        return summary.toString();
+    }
+
+    public void shouldEvaluateConcurrentlyOnAFrozenDocument() throws Exception {
+        String xml = xml(300);
+        String expected = summarize(xpbf.browse(xml));
+        // parsed with the default deferred dom, which is expanded when freezing
+        XPathBrowser frozen = xpbf.browse(xml).freeze();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() -> summarize(frozen)));
+            }
+            for (Future<String> future : futures) {
+                assertThat(future.get(), equalTo(expected));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void shouldSplitParallelStreams() {
+        XPathBrowser frozen = xpbf.browse(xml(1000)).freeze();
+        assertThat(frozen.isFrozen(), equalTo(true));
+        assertThat(frozen.freeze() == frozen, equalTo(true));
+        Spliterator<XPathBrowser> spliterator = frozen.streamMatching("/root/item").parallel().spliterator();
+        assertThat(spliterator.hasCharacteristics(Spliterator.SIZED), equalTo(true));
+        assertThat(spliterator.getExactSizeIfKnown(), equalTo(1000L));
+        assertThat(spliterator.trySplit() != null, equalTo(true));
+
+        assertThat(frozen.streamMatching("//item").parallel().mapToLong(item -> item.getLong("@id", 0)).sum(), equalTo(999L * 1000 / 2));
+        List<String> names = frozen.streamMatching("/root/item").parallel().map(item -> item.getString("name").get()).collect(Collectors.toList());
+        assertThat(names.get(999), equalTo("item 999"));
+        assertThat(frozen.streamMatching("/root/item").parallel().allMatch(XPathBrowser::isFrozen), equalTo(true));
+        assertThat(frozen.browseFirst("/root/item").isFrozen(), equalTo(true));
+        assertThat(xpbf.browse(xml(1)).isFrozen(), equalTo(false));
+    }
+
+    @Test(expectedExceptions = ConcurrentModificationException.class)
+    public void shouldFailFastAfterModification() {
+        XPathBrowser frozen = xpbf.browse(xml(3)).freeze();
+        XPathBrowser item = frozen.browseFirst("/root/item");
+        assertThat(item.getString("name").get(), equalTo("item 0"));
+        ((Element) item.node()).setAttribute("id", "42");
+        // freezing again is allowed after a modification
+        assertThat(xpbf.browse(item.node()).freeze().getNodeAttribute("id").get(), equalTo("42"));
+        item.getString("name");
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+@Test
+public class IncrementalRecordParserTest {
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void shouldEmitRecordsBeforeTheInputIsComplete() throws Exception {
+        CountDownLatch firstRecord = new CountDownLatch(1);
+        List<String> names = Collections.synchronizedList(new ArrayList<>());
+        IncrementalRecordParser feed = xpbf.incrementalRecords("/feed/item", item -> {
+            names.add(item.getString("name").get());
+            firstRecord.countDown();
+        });
+        feed.feed(ByteBuffer.wrap(bytes("<?xml version='1.0' encoding='UTF-8'?><feed><item id='1'><name>first</name></item><it")));
+        assertThat("first record is emitted while the rest is not there yet", firstRecord.await(10, TimeUnit.SECONDS), equalTo(true));
+        feed.feed(ByteBuffer.wrap(bytes("em id='2'><name>second</name></item></feed>")));
+        assertThat(feed.finish().get(10, TimeUnit.SECONDS), equalTo(2L));
+        assertThat(names, equalTo(Arrays.asList("first", "second")));
+        assertThat(feed.bufferedBytes(), equalTo(0L));
+    }
+
+    public void shouldHandleChunksThatSplitCharacters() throws Exception {
+        StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < 200; i++) {
+            xml.append("<item><name>café 😀 ").append(i).append("</name></item>");
+        }
+        byte[] bytes = bytes(xml.append("</feed>").toString());
+        List<String> names = Collections.synchronizedList(new ArrayList<>());
+        // small buffer so feeding has to wait for the parser
+        IncrementalRecordParser feed = xpbf.incrementalRecords("/feed/item", StandardCharsets.UTF_8, IncrementalRecordParser.defaultExecutor(), 64,
+                item -> names.add(item.getString("name").get()));
+        ByteBuffer chunk = ByteBuffer.allocate(7);
+        for (int i = 0; i < bytes.length; i += 7) {
+            chunk.clear();
+            chunk.put(bytes, i, Math.min(7, bytes.length - i)).flip();
+            feed.feed(chunk);
+        }
+        assertThat(feed.finish().get(10, TimeUnit.SECONDS), equalTo(200L));
+        assertThat(names.get(199), equalTo("café 😀 199"));
+    }
+
+    public void shouldFailOnInvalidXml() throws Exception {
+        IncrementalRecordParser feed = xpbf.incrementalRecords("/feed/item", item -> {});
+        feed.feed(bytes("<feed><item></feed>"), 0, 19);
+        try {
+            feed.finish().get(10, TimeUnit.SECONDS);
+            throw new AssertionError("should fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RuntimeException.class));
+        }
+        try {
+            feed.feed(bytes("<more/>"), 0, 7);
+            throw new AssertionError("should not accept more input");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void shouldStopWhenClosed() throws Exception {
+        IncrementalRecordParser feed = xpbf.incrementalRecords("/feed/item", item -> {});
+        feed.feed(bytes("<feed><item/>"), 0, 13);
+        feed.close();
+        try {
+            feed.completion().get(10, TimeUnit.SECONDS);
+            throw new AssertionError("should be cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRequireAnElementRecordPath() {
+        xpbf.incrementalRecords("/feed/item/@id", item -> {});
+    }
+}
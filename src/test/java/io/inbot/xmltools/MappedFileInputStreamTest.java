@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.testng.annotations.Test;
+
+@Test
+public class MappedFileInputStreamTest {
+
+    private final Path file = Paths.get("src/test/resources/test_feed.xml");
+
+    public void shouldReadAcrossWindows() throws IOException {
+        byte[] expected = Files.readAllBytes(file);
+        for (long windowSize : new long[] { 1, 7, 64, MappedFileInputStream.DEFAULT_WINDOW_SIZE }) {
+            try (MappedFileInputStream in = new MappedFileInputStream(file, windowSize)) {
+                assertThat(in.size(), equalTo((long) expected.length));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[10];
+                int n;
+                while ((n = in.read(buf, 0, buf.length)) >= 0) {
+                    out.write(buf, 0, n);
+                }
+                assertThat(out.toByteArray(), equalTo(expected));
+                assertThat(in.read(), equalTo(-1));
+            }
+        }
+    }
+
+    public void shouldReadSingleBytes() throws IOException {
+        byte[] expected = Files.readAllBytes(file);
+        try (MappedFileInputStream in = new MappedFileInputStream(file, 5)) {
+            for (byte b : expected) {
+                assertThat(in.read(), equalTo(b & 0xff));
+            }
+            assertThat(in.read(), equalTo(-1));
+        }
+    }
+
+    public void shouldReadEmptyFile() throws IOException {
+        Path empty = Files.createTempFile("empty", ".xml");
+        try (MappedFileInputStream in = new MappedFileInputStream(empty)) {
+            assertThat(in.read(), equalTo(-1));
+        } finally {
+            Files.delete(empty);
+        }
+    }
+
+    public void shouldParseMappedFile() {
+        PooledXmlParser parser = new PooledXmlParser(1, 10);
+        assertThat(parser.parseXml(Paths.get("src/test/resources/test.xml")).getDocumentElement().getNodeName(), equalTo("root"));
+    }
+}
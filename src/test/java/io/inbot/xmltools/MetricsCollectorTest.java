@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.testng.annotations.Test;
+
+@Test
+public class MetricsCollectorTest {
+
+    private static final String XML = "<root><a>1</a><b>2</b></root>";
+
+    public void shouldCollectParseMetrics() {
+        MetricsCollector metrics = new MetricsCollector();
+        PooledXmlParser parser = parser(metrics);
+        byte[] bytes = XML.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 10; i++) {
+            parser.parseXml(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8);
+        }
+        try {
+            parser.parseXml("<root>");
+        } catch (RethrownException e) {
+            // expected
+        }
+        assertThat(metrics.parseCount(), equalTo(10L));
+        assertThat(metrics.parseFailures(), equalTo(1L));
+        assertThat(metrics.parsedBytes(), equalTo(10L * bytes.length));
+        assertThat(metrics.documentBuilderBorrows(), equalTo(11L));
+        assertThat(metrics.documentBuilderCreations(), equalTo(1L));
+        assertThat(metrics.parseLatency().percentileNanos(50), lessThanOrEqualTo(metrics.parseLatency().maxNanos()));
+    }
+
+    public void shouldCollectExpressionMetrics() {
+        MetricsCollector metrics = new MetricsCollector();
+        XPathExpressionCache cache = new XPathExpressionCache(100, 10, 2, metrics);
+        XPathBrowser browser = new XpathBrowserFactory(parser(metrics), cache).browse(XML);
+        for (int i = 0; i < 10; i++) {
+            browser.getString("/root/a");
+            browser.getString("count(/root/*)");
+        }
+        assertThat(cache.get("/root/a"), instanceOf(MeasuredXPath.class));
+        assertThat(metrics.expressionCacheMisses(), equalTo(2L));
+        assertThat(metrics.expressionCacheHits(), greaterThanOrEqualTo(18L));
+        assertThat(metrics.expressionCacheHitRatio(), greaterThan(0.8));
+        assertThat(metrics.compileCount(), equalTo(2L));
+        assertThat(metrics.evaluationLatency().count(), equalTo(20L));
+        List<MetricsCollector.ExpressionStats> slowest = metrics.slowestExpressions(1);
+        assertThat(slowest.size(), equalTo(1));
+        assertThat(slowest.get(0).count(), equalTo(10L));
+        assertThat(metrics.toString().contains("evaluations: count=20"), equalTo(true));
+    }
+
+    public void shouldNotCountFailedCompiles() {
+        MetricsCollector metrics = new MetricsCollector();
+        XPathExpressionCache cache = new XPathExpressionCache(100, 10, 2, metrics);
+        try {
+            cache.get("/root/[");
+        } catch (RethrownException e) {
+            // expected
+        }
+        assertThat(metrics.compileCount(), equalTo(0L));
+    }
+
+    public void shouldReportEvictions() {
+        MetricsCollector metrics = new MetricsCollector();
+        XPathExpressionCache small = new XPathExpressionCache(1, 10, 1, metrics);
+        small.get("/a");
+        small.get("/b");
+        small.get("/c");
+        assertThat(metrics.expressionEvictions(), equalTo(2L));
+    }
+
+    public void shouldLimitTrackedExpressions() {
+        MetricsCollector collector = new MetricsCollector(2);
+        for (int i = 0; i < 5; i++) {
+            collector.expressionEvaluated("/e" + i, 1000);
+        }
+        assertThat(collector.slowestExpressions(10).size(), equalTo(2));
+        assertThat(collector.evaluationLatency().count(), equalTo(5L));
+    }
+
+    private PooledXmlParser parser(MetricsCollector metrics) {
+        return new PooledXmlParser(2, 10, () -> {
+            try {
+                return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw RethrownException.rethrow(e);
+            }
+        }, metrics);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import org.testng.annotations.Test;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+@Test
+public class NodeListSpliteratorTest {
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    private XPathBrowser browser(int items) {
+        StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < items; i++) {
+            xml.append("<item id='").append(i).append("'/>");
+        }
+        return xpbf.browse(xml.append("</root>").toString());
+    }
+
+    public void shouldSplitByIndexRange() {
+        NodeList nodes = browser(101).getNodeList("//item");
+        NodeListSpliterator spliterator = new NodeListSpliterator(nodes);
+        assertThat(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED | Spliterator.IMMUTABLE), equalTo(true));
+        assertThat(spliterator.estimateSize(), equalTo(101L));
+
+        Spliterator<Node> prefix = spliterator.trySplit();
+        assertThat(prefix.estimateSize(), equalTo(50L));
+        assertThat(spliterator.estimateSize(), equalTo(51L));
+        List<Node> visited = new ArrayList<>();
+        while (prefix.tryAdvance(visited::add)) {
+            // consume
+        }
+        spliterator.forEachRemaining(visited::add);
+        assertThat(visited.size(), equalTo(101));
+        for (int i = 0; i < visited.size(); i++) {
+            assertThat(visited.get(i) == nodes.item(i), equalTo(true));
+        }
+        assertThat(spliterator.estimateSize(), equalTo(0L));
+
+        Spliterator<Node> single = new NodeListSpliterator(browser(1).getNodeList("//item"));
+        assertThat(single.trySplit() == null, equalTo(true));
+    }
+
+    public void shouldCopyXpathNodeListsForConcurrentReads() {
+        XPathBrowser browser = browser(10);
+        NodeList xpathNodes = browser.getNodeList("//item");
+        NodeList copy = NodeListSpliterator.threadSafe(xpathNodes);
+        assertThat(copy != xpathNodes, equalTo(true));
+        assertThat(copy.getLength(), equalTo(10));
+        assertThat(copy.item(9) == xpathNodes.item(9), equalTo(true));
+        // the fast path already returns a plain list
+        NodeList simpleNodes = browser.getNodeList("/root/item");
+        assertThat(NodeListSpliterator.threadSafe(simpleNodes) == simpleNodes, equalTo(true));
+    }
+
+    public void shouldStreamSized() {
+        XPathBrowser browser = browser(20);
+        assertThat(browser.streamMatching("//item").spliterator().getExactSizeIfKnown(), equalTo(20L));
+        assertThat(browser.browseFirst("/root").streamSubNodes().spliterator().getExactSizeIfKnown(), equalTo(20L));
+        assertThat(browser.streamMatching("//item").toArray().length, equalTo(20));
+        // simple paths are lazy unless the browser is frozen
+        assertThat(browser.streamMatching("/root/item").spliterator().getExactSizeIfKnown(), equalTo(-1L));
+        assertThat(browser.freeze().streamMatching("/root/item").spliterator().getExactSizeIfKnown(), equalTo(20L));
+    }
+
+    public void shouldStreamInParallelWhenFrozen() {
+        XPathBrowser frozen = browser(1000).freeze();
+        assertThat(frozen.parallelStreamMatching("//item[@id >= 500]").mapToLong(item -> item.getLong("@id", 0)).sum(),
+                equalTo((500L + 999L) * 500 / 2));
+        assertThat(frozen.browseFirst("/root").parallelStreamSubNodes().count(), equalTo(1000L));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRequireFreezeForParallelStreams() {
+        browser(1).parallelStreamMatching("//item");
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+
+@Test
+public class ObjectPoolTest {
+
+    public void shouldReuseReturnedInstances() {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger resets = new AtomicInteger();
+        ObjectPool<StringBuilder> pool = new ObjectPool<>(2, () -> {
+            created.incrementAndGet();
+            return new StringBuilder();
+        }, sb -> {
+            resets.incrementAndGet();
+            sb.setLength(0);
+        });
+        StringBuilder first = pool.borrow();
+        first.append("dirty");
+        pool.release(first);
+        StringBuilder second = pool.borrow();
+        assertThat(second, sameInstance(first));
+        assertThat(second.length(), equalTo(0));
+        assertThat(created.get(), equalTo(1));
+        assertThat(resets.get(), equalTo(1));
+    }
+
+    public void shouldCreateNewInstancesWhenEmpty() {
+        ObjectPool<Object> pool = new ObjectPool<>(2, Object::new, o -> {});
+        Object first = pool.borrow();
+        Object second = pool.borrow();
+        assertThat(second, not(sameInstance(first)));
+    }
+
+    public void shouldDropInstancesWhenFull() {
+        ObjectPool<Object> pool = new ObjectPool<>(2, Object::new, o -> {});
+        for (int i = 0; i < 5; i++) {
+            pool.release(new Object());
+        }
+        assertThat(pool.idle(), equalTo(2));
+    }
+
+    public void shouldDropInstancesThatFailToReset() {
+        ObjectPool<Object> pool = new ObjectPool<>(2, Object::new, o -> {
+            throw new IllegalStateException("broken");
+        });
+        pool.release(new Object());
+        assertThat(pool.idle(), equalTo(0));
+    }
+}
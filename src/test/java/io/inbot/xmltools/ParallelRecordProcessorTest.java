@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class ParallelRecordProcessorTest {
+
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void before() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterMethod
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    public void shouldProcessInDocumentOrder() {
+        List<Long> results = new ArrayList<>();
+        long count = new ParallelRecordProcessor(xpbf, executor, 16, true).process(new StringReader(feed(1000)), "/feed/item", item -> {
+            long id = item.getLong("id").get();
+            if (id % 10 == 0) {
+                // make some records slow so they complete out of order
+                sleep(1);
+            }
+            return id;
+        }, results::add);
+        assertThat(count, equalTo(1000L));
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i), equalTo((long) i));
+        }
+    }
+
+    public void shouldProcessAllRecordsUnordered() {
+        List<Long> results = new ArrayList<>();
+        long count = new ParallelRecordProcessor(xpbf, executor, 16, false).process(new StringReader(feed(1000)), "/feed/item", item -> item.getLong("id").get(), results::add);
+        assertThat(count, equalTo(1000L));
+        Collections.sort(results);
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i), equalTo((long) i));
+        }
+    }
+
+    public void shouldLimitRecordsInFlight() {
+        for (boolean ordered : new boolean[] { true, false }) {
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            new ParallelRecordProcessor(xpbf, executor, 4, ordered).process(new StringReader(feed(200)), "/feed/item", item -> {
+                int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(current, Math::max);
+                return item;
+            }, item -> inFlight.decrementAndGet());
+            assertThat("at most 4 in flight " + maxInFlight.get(), maxInFlight.get() <= 4);
+        }
+    }
+
+    public void shouldKeepGoingPastASlowRecordWhenUnordered() {
+        CountDownLatch othersDone = new CountDownLatch(500);
+        List<Long> results = new ArrayList<>();
+        long count = new ParallelRecordProcessor(xpbf, executor, 4, false).process(new StringReader(feed(1000)), "/feed/item", item -> {
+            long id = item.getLong("id").get();
+            if (id == 0) {
+                // the first record waits until many later records have been passed to the sink
+                await(othersDone);
+            }
+            return id;
+        }, id -> {
+            results.add(id);
+            othersDone.countDown();
+        });
+        assertThat(count, equalTo(1000L));
+        assertThat(results.indexOf(0L) >= 500, equalTo(true));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldPropagateFailures() {
+        new ParallelRecordProcessor(xpbf, executor, 4, false).process(new StringReader(feed(100)), "/feed/item", item -> {
+            if (item.getLong("id").get() == 42) {
+                throw new IllegalStateException("oops");
+            }
+            return item;
+        }, item -> {});
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String feed(int items) {
+        StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < items; i++) {
+            xml.append("<item><id>").append(i).append("</id></item>");
+        }
+        return xml.append("</feed>").toString();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -22,11 +22,23 @@
 package io.inbot.xmltools;
 
 import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.parsers.DocumentBuilder;
+import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+import org.w3c.dom.Element;
 
 @Test
 public class PooledXmlParserTest {
@@ -51,4 +63,110 @@ public class PooledXmlParserTest {
     public void shouldNotParseInvalidXml() {
         pooledXmlParser.parseXml("<noxml>");
     }
+
+    public void shouldParseConcurrentlyWithMoreThreadsThanPooledBuilders() throws InterruptedException, ExecutionException {
+        PooledXmlParser parser = new PooledXmlParser(2, 20);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final int n = i;
+                futures.add(executor.submit(() -> parser.parseXml("<root>" + n + "</root>").getDocumentElement().getTextContent()));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                AssertJUnit.assertEquals("" + i, futures.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void shouldKeepOneDocumentBuilderPerThread() throws InterruptedException, ExecutionException {
+        DocumentBuilder builder = pooledXmlParser.getDocumentBuilderForCurrentThread();
+        AssertJUnit.assertSame(builder, pooledXmlParser.getDocumentBuilderForCurrentThread());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AssertJUnit.assertNotSame(builder, executor.submit(() -> pooledXmlParser.getDocumentBuilderForCurrentThread()).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void shouldParseBytesWithDetectedEncoding() {
+        byte[] latin1 = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><root>caf\u00e9</root>".getBytes(StandardCharsets.ISO_8859_1);
+        AssertJUnit.assertEquals("caf\u00e9", pooledXmlParser.parseXml(latin1).getDocumentElement().getTextContent());
+        AssertJUnit.assertEquals("caf\u00e9", pooledXmlParser.parseXml(new ByteArrayInputStream(latin1)).getDocumentElement().getTextContent());
+    }
+
+    public void shouldUseSpecifiedEncoding() {
+        byte[] utf8 = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><root>caf\u00e9</root>".getBytes(StandardCharsets.UTF_8);
+        AssertJUnit.assertEquals("caf\u00e9",
+                pooledXmlParser.parseXml(new ByteArrayInputStream(utf8), StandardCharsets.UTF_8).getDocumentElement().getTextContent());
+    }
+
+    public void shouldReplaceMalformedInputWithSpecifiedEncoding() {
+        byte[] malformed = new byte[] { '<', 'r', 'o', 'o', 't', '>', 'a', (byte) 0xff, 'b', '<', '/', 'r', 'o', 'o', 't', '>' };
+        AssertJUnit.assertEquals("a\uFFFDb",
+                pooledXmlParser.parseXml(new ByteArrayInputStream(malformed), StandardCharsets.UTF_8).getDocumentElement().getTextContent());
+        PooledXmlParser measured = new PooledXmlParser(2, ParserProfile.DEFAULT, new MetricsListener() {});
+        AssertJUnit.assertEquals("a\uFFFDb",
+                measured.parseXml(new ByteArrayInputStream(malformed), StandardCharsets.UTF_8).getDocumentElement().getTextContent());
+    }
+
+    public void shouldParsePartOfByteArray() {
+        byte[] bytes = "xx<root>42</root>yy".getBytes(StandardCharsets.UTF_8);
+        AssertJUnit.assertEquals("42", pooledXmlParser.parseXml(bytes, 2, bytes.length - 4).getDocumentElement().getTextContent());
+    }
+
+    public void shouldParseByteBuffersWithoutChangingPosition() {
+        byte[] bytes = "xx<root>42</root>".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer heap = ByteBuffer.wrap(bytes);
+        heap.position(2);
+        AssertJUnit.assertEquals("42", pooledXmlParser.parseXml(heap).getDocumentElement().getTextContent());
+        AssertJUnit.assertEquals(2, heap.position());
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip().position(2);
+        AssertJUnit.assertEquals("42", pooledXmlParser.parseXml(direct).getDocumentElement().getTextContent());
+        AssertJUnit.assertEquals(2, direct.position());
+        ByteBuffer slice = ByteBuffer.wrap(("yy" + new String(bytes, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8), 2, bytes.length).slice();
+        slice.position(2);
+        AssertJUnit.assertEquals("42", pooledXmlParser.parseXml(slice).getDocumentElement().getTextContent());
+    }
+
+    public void shouldParseCharSequence() {
+        StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < 10000; i++) {
+            xml.append("<i>").append(i).append("</i>");
+        }
+        xml.append("</root>");
+        AssertJUnit.assertEquals(10000, pooledXmlParser.parseXml(xml).getDocumentElement().getChildNodes().getLength());
+    }
+
+    public void shouldParseWithAllProfiles() {
+        for (ParserProfile profile : ParserProfile.values()) {
+            PooledXmlParser parser = new PooledXmlParser(2, profile);
+            AssertJUnit.assertEquals(profile.name(), "42", parser.parseXml("<root><a x='1'>42</a></root>").getDocumentElement().getTextContent());
+        }
+    }
+
+    @Test(expectedExceptions = RethrownException.class)
+    public void shouldRejectDoctypeForUntrustedXml() {
+        new PooledXmlParser(2, ParserProfile.FAST_UNTRUSTED).parseXml("<!DOCTYPE r [<!ENTITY e SYSTEM \"file:///etc/hostname\">]><r>&e;</r>");
+    }
+
+    public void shouldNotLoadExternalDtdsForTrustedXml() {
+        PooledXmlParser parser = new PooledXmlParser(2, ParserProfile.FAST_TRUSTED);
+        // the dtd host does not exist; loading it would fail the parse
+        AssertJUnit.assertEquals("x", parser.parseXml("<!DOCTYPE r SYSTEM \"http://dtd.invalid/r.dtd\"><r>x</r>").getDocumentElement().getTextContent());
+        AssertJUnit.assertEquals("value", parser.parseXml("<!DOCTYPE r [<!ENTITY e \"value\">]><r>&e;</r>").getDocumentElement().getTextContent());
+        AssertJUnit.assertEquals("", parser.parseXml("<!DOCTYPE r [<!ENTITY e SYSTEM \"file:///etc/hostname\">]><r>&e;</r>").getDocumentElement().getTextContent());
+    }
+
+    public void shouldBuildSmallDomsWithLowMemoryProfile() {
+        PooledXmlParser parser = new PooledXmlParser(2, ParserProfile.LOW_MEMORY);
+        Element root = parser.parseXml("<r><!-- comment --><![CDATA[a<]]>b</r>").getDocumentElement();
+        AssertJUnit.assertEquals(1, root.getChildNodes().getLength());
+        AssertJUnit.assertEquals("a<b", root.getFirstChild().getNodeValue());
+    }
 }
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@Test
+public class RecordExtractorTest {
+
+    private static final String[] EXPRESSIONS = {
+            "name",
+            "@id",
+            "@type",
+            "price",
+            "tags/tag",
+            "tags",
+            "name/text()",
+            "extra",
+            "item/name",
+            "item/@id",
+            "./name",
+            "tags/tag[2]",
+            "count(tags/tag)",
+            ".//name",
+            "idontexist",
+            "@idontexist"
+    };
+
+    private final XPathExpressionCache cache = new XPathExpressionCache(20, 10000, 1000, 20);
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), cache);
+
+    @DataProvider
+    public Object[][] expressions() {
+        Object[][] result = new Object[EXPRESSIONS.length][];
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            result[i] = new Object[] { EXPRESSIONS[i] };
+        }
+        return result;
+    }
+
+    @Test(dataProvider = "expressions")
+    public void shouldMatchXPathBrowser(String expression) {
+        RecordExtractor<Map<String, Object>> extractor = new RecordExtractor<Map<String, Object>>(cache);
+        // put all the other fields in the same extractor so they share the walk
+        for (String e : EXPRESSIONS) {
+            extractor = extractor.field(e, FieldType.STRING, (map, value) -> map.put(e, value));
+            if (!e.startsWith("count(")) {
+                extractor = extractor.field(e, FieldType.STRING_VALUES, (map, value) -> map.put(e + "[]", value));
+            }
+        }
+        for (XPathBrowser item : items()) {
+            Map<String, Object> values = extractor.extract(item, new HashMap<>());
+            assertThat(values.get(expression), equalTo(item.getString(expression).orElse(null)));
+            if (!expression.startsWith("count(")) {
+                assertThat((String[]) values.get(expression + "[]"), equalTo(item.getStringValues(expression)));
+            }
+        }
+    }
+
+    public void shouldConvertTypes() {
+        RecordExtractor<Map<String, Object>> extractor = new RecordExtractor<Map<String, Object>>(cache)
+                .field("@id", FieldType.LONG, (map, value) -> map.put("id", value))
+                .field("price", FieldType.DOUBLE, (map, value) -> map.put("price", value))
+                .field("count(tags/tag)", FieldType.INT, (map, value) -> map.put("tags", value))
+                .field("name", FieldType.BOOLEAN, (map, value) -> map.put("flag", value));
+        Map<String, Object> values = extractor.extract(items().get(0), new HashMap<>());
+        assertThat(values.get("id"), equalTo(1L));
+        assertThat(values.get("price"), equalTo(1.5));
+        assertThat(values.get("tags"), equalTo(2));
+        assertThat(values.get("flag"), equalTo(false));
+    }
+
+    public void shouldNotCallSetterForAbsentValues() {
+        RecordExtractor<Map<String, Object>> extractor = new RecordExtractor<Map<String, Object>>(cache)
+                .field("idontexist", FieldType.LONG, (map, value) -> map.put("missing", value));
+        assertThat(extractor.extract(items().get(0), new HashMap<>()).containsKey("missing"), equalTo(false));
+    }
+
+    public void shouldExtractToMap() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("id", "@id");
+        fields.put("name", "name");
+        fields.put("missing", "idontexist");
+        RecordExtractor<Map<String, Object>> extractor = RecordExtractor.forMap(cache, fields);
+        List<Map<String, Object>> records = items().stream().map(item -> extractor.extract(item, new HashMap<>())).collect(Collectors.toList());
+        assertThat(records.get(1).get("id"), equalTo("2"));
+        assertThat(records.get(1).get("name"), equalTo("Second & more"));
+        assertThat(records.get(1).get("missing"), nullValue());
+    }
+
+    public void shouldNotChangeExistingExtractorWhenAddingFields() {
+        RecordExtractor<Map<String, Object>> extractor = new RecordExtractor<Map<String, Object>>(cache)
+                .field("@id", FieldType.STRING, (map, value) -> map.put("id", value));
+        extractor.field("name", FieldType.STRING, (map, value) -> map.put("name", value));
+        assertThat(extractor.extract(items().get(0), new HashMap<>()).containsKey("name"), equalTo(false));
+    }
+
+    private List<XPathBrowser> items() {
+        return xpbf.browse(feed(), StandardCharsets.UTF_8).streamMatching("/feed/item").collect(Collectors.toList());
+    }
+
+    private InputStream feed() {
+        return this.getClass().getResourceAsStream("/test_feed.xml");
+    }
+}
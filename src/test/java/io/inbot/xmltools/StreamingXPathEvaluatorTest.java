@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@Test
+public class StreamingXPathEvaluatorTest {
+
+    private static final String[] EXPRESSIONS = {
+            "/feed/title",
+            "feed/title",
+            "/feed/item/name",
+            "/feed/item/@id",
+            "//item/@id",
+            "//item/name",
+            "/feed/item[2]/name",
+            "/feed/item[@type='book']/price",
+            "/feed/item[@type='book'][@id='3']/name",
+            "/feed/*[3]/@id",
+            "//tags/tag",
+            "/feed/item//tag",
+            "/feed/item/name/text()",
+            "/feed/item/extra",
+            "/feed/item[@missing]/name",
+            "/feed/idontexist"
+    };
+
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    @DataProvider
+    public Object[][] expressions() {
+        Object[][] result = new Object[EXPRESSIONS.length][];
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            result[i] = new Object[] { EXPRESSIONS[i] };
+        }
+        return result;
+    }
+
+    @Test(dataProvider = "expressions")
+    public void shouldMatchXPathBrowser(String expression) {
+        XPathBrowser browser = xpbf.browse(feed(), StandardCharsets.UTF_8);
+        StreamingXPathResult result = new StreamingXPathEvaluator(EXPRESSIONS).evaluate(feed());
+        assertThat(result.getString(expression), equalTo(browser.getString(expression)));
+        assertThat(result.getStringValues(expression), equalTo(browser.getStringValues(expression)));
+    }
+
+    public void shouldReportValuesWhenComplete() {
+        List<String> values = new ArrayList<>();
+        new StreamingXPathEvaluator("//item/name", "//item/@id").evaluate(feed(), (expression, value) -> values.add(expression + "=" + value.trim()));
+        assertThat(values.size(), equalTo(8));
+        assertThat(values.get(0), equalTo("//item/@id=1"));
+        assertThat(values.get(1), equalTo("//item/name=First"));
+    }
+
+    public void shouldConvertTypes() {
+        StreamingXPathResult result = new StreamingXPathEvaluator("/feed/item/price", "/feed/item/@id", "/feed/title").evaluate(feed());
+        assertThat(result.getDouble("/feed/item/price").get(), equalTo(1.5));
+        assertThat(result.getLong("/feed/item/@id").get(), equalTo(1L));
+        assertThat(result.getInt("/feed/item/@id").get(), equalTo(1));
+        assertThat(result.getBoolean("/feed/title"), equalTo(false));
+        assertThat(result.count("/feed/item/price"), equalTo(3));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectUnsupportedExpressions() {
+        new StreamingXPathEvaluator("count(/feed/item)");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectPositionAfterOtherPredicates() {
+        new StreamingXPathEvaluator("/feed/item[@type='book'][2]");
+    }
+
+    private InputStream feed() {
+        return this.getClass().getResourceAsStream("/test_feed.xml");
+    }
+}
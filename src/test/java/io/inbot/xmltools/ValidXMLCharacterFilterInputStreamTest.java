@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+@Test
+public class ValidXMLCharacterFilterInputStreamTest {
+
+    public void shouldDropControlCharacters() throws IOException {
+        assertThat(filter("OK" + (char) 0x1a + "OK\t\n", 1024), equalTo("OKOK\t\n"));
+    }
+
+    public void shouldPassThroughMultiByteCharacters() throws IOException {
+        String text = "café € " + new String(Character.toChars(0x1F600)) + " ";
+        for (int bufferSize = 1; bufferSize < 12; bufferSize++) {
+            assertThat("buffer size " + bufferSize, filter(text, bufferSize), equalTo(text));
+        }
+    }
+
+    public void shouldDropMalformedSequences() throws IOException {
+        byte[] bytes = {
+                'a',
+                (byte) 0x80, // stray continuation byte
+                'b',
+                (byte) 0xC0, (byte) 0xAF, // overlong encoding of '/'
+                'c',
+                (byte) 0xED, (byte) 0xA0, (byte) 0x80, // encoded surrogate
+                'd',
+                (byte) 0xEF, (byte) 0xBF, (byte) 0xBF, // U+FFFF
+                'e',
+                (byte) 0xE2, (byte) 0x82, // truncated euro sign
+                'f',
+                (byte) 0xF0, (byte) 0x9F, (byte) 0x98 // truncated at the end
+        };
+        for (int bufferSize = 1; bufferSize < 12; bufferSize++) {
+            assertThat("buffer size " + bufferSize, filter(bytes, bufferSize), equalTo("abcdef"));
+        }
+    }
+
+    public void shouldParseFilteredInput() {
+        byte[] bytes = ("<root>café" + (char) 0x1a + "</root>").getBytes(StandardCharsets.UTF_8);
+        Document document = new PooledXmlParser(1, 1).parse(new InputSource(new ValidXMLCharacterFilterInputStream(new ByteArrayInputStream(bytes))));
+        assertThat(document.getDocumentElement().getTextContent(), equalTo("café"));
+    }
+
+    private static String filter(String input, int bufferSize) throws IOException {
+        return filter(input.getBytes(StandardCharsets.UTF_8), bufferSize);
+    }
+
+    private static String filter(byte[] input, int bufferSize) throws IOException {
+        // return the input in small chunks so sequences get split over reads
+        InputStream chunked = new FilterInputStream(new ByteArrayInputStream(input)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 5));
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new ValidXMLCharacterFilterInputStream(chunked)) {
+            byte[] buf = new byte[bufferSize];
+            int read;
+            while ((read = in.read(buf, 0, bufferSize)) != -1) {
+                out.write(buf, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
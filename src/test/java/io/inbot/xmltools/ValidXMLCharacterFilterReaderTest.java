@@ -21,7 +21,9 @@
  */
 package io.inbot.xmltools;
 
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 
 import org.testng.AssertJUnit;
@@ -64,4 +66,50 @@ public class ValidXMLCharacterFilterReaderTest {
         r.close();
         AssertJUnit.assertEquals(-1, length);
     }
+
+    public void shouldPassThroughSurrogatePairs() throws IOException {
+        final String smiley = new String(Character.toChars(0x1F600));
+        final String test = "a" + smiley + "b" + (char) 0x1a + smiley;
+        AssertJUnit.assertEquals("a" + smiley + "b" + smiley, readAll(test, 1024));
+    }
+
+    public void shouldPassThroughSurrogatePairsSplitOverReads() throws IOException {
+        final String smiley = new String(Character.toChars(0x1F600));
+        final String test = "ab" + smiley + "c" + smiley + smiley + "d";
+        for (int bufferSize = 1; bufferSize < 6; bufferSize++) {
+            AssertJUnit.assertEquals("buffer size " + bufferSize, test, readAll(test, bufferSize));
+        }
+    }
+
+    public void shouldDropUnpairedSurrogates() throws IOException {
+        final String test = "a" + (char) 0xD83D + "b" + (char) 0xDE00 + "c" + (char) 0xD83D;
+        AssertJUnit.assertEquals("abc", readAll(test, 1024));
+        AssertJUnit.assertEquals("abc", readAll(test, 1));
+    }
+
+    public void shouldFilterSingleCharacterReads() throws IOException {
+        final ValidXMLCharacterFilterReader r = new ValidXMLCharacterFilterReader(new StringReader("" + (char) 0x1a + "a"));
+        AssertJUnit.assertEquals('a', r.read());
+        AssertJUnit.assertEquals(-1, r.read());
+        r.close();
+    }
+
+    private static String readAll(String input, int bufferSize) throws IOException {
+        // StringReader returns as much as it can, so use a reader that returns the input in small chunks as well
+        final Reader chunked = new FilterReader(new StringReader(input)) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 3));
+            }
+        };
+        final StringBuilder builder = new StringBuilder();
+        try (ValidXMLCharacterFilterReader r = new ValidXMLCharacterFilterReader(chunked)) {
+            final char[] buf = new char[bufferSize];
+            int length;
+            while ((length = r.read(buf, 0, bufferSize)) != -1) {
+                builder.append(buf, 0, length);
+            }
+        }
+        return builder.toString();
+    }
 }
@@ -25,18 +25,30 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import io.inbot.xmltools.exceptions.RethrownException;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import javax.xml.xpath.XPathExpressionException;
 import org.apache.commons.lang3.StringUtils;
 import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 @Test
@@ -196,4 +208,146 @@ public class XPathBrowserTest {
         assertThat("node does not exist",browser.getString("/root/idontexist").isPresent() == false);
         assertThat("node does not exist",browser.getLong("/root/idontexist").isPresent() == false);
     }
+
+    public void shouldHandlePrimitives() {
+        assertThat(browser.getLong("/root/long", -1), equalTo(42l));
+        assertThat(browser.getLong(root, "long", -1), equalTo(42l));
+        assertThat(browser.getLong("/root/noString", -1), equalTo(-1l));
+        assertThat(browser.getLong("/root/idontexist", -1), equalTo(-1l));
+        assertThat(browser.getLong("count(/root/list/item)", -1), equalTo(2l));
+        assertThat(browser.getAsLong("/root/long").getAsLong(), equalTo(42l));
+        assertThat(browser.getAsLong("/root/idontexist").isPresent(), equalTo(false));
+        assertThat(browser.getInt("/root/list/item[2]", -1), equalTo(2));
+        assertThat(browser.getAsInt("/root/long").getAsInt(), equalTo(42));
+        assertThat(browser.getDouble("/root/double", Double.NaN), equalTo(0.42));
+        assertThat(browser.getAsDouble("/root/double").getAsDouble(), equalTo(0.42));
+        assertThat(Double.isNaN(browser.getDouble("/root/idontexist", Double.NaN)), equalTo(true));
+        assertThat(browser.getLongValues("/root/list/item", -1), equalTo(new long[] { 1, 2 }));
+        assertThat(browser.getDoubleValues("/root/list/item", Double.NaN), equalTo(new double[] { 1, 2 }));
+        assertThat(browser.getLongValues("/root/idontexist", -1).length, equalTo(0));
+    }
+
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void shouldRejectInvalidPrimitives() {
+        browser.getLong("/root/string", -1);
+    }
+
+    public void shouldParseLongsLikeLongValueOf() {
+        for (String value : new String[] { "0", " 42 ", "-1", "+7", "\n9223372036854775807\t", "-9223372036854775808" }) {
+            assertThat(Numbers.parseLong(value), equalTo(Long.valueOf(value.trim())));
+        }
+        for (String value : new String[] { "", " ", "-", "+", "1.0", "9223372036854775808", "-9223372036854775809", "1 2", "0x1" }) {
+            try {
+                Numbers.parseLong(value);
+                AssertJUnit.fail("should not parse " + value);
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+        assertThat(Numbers.parseInt("-2147483648"), equalTo(Integer.MIN_VALUE));
+        try {
+            Numbers.parseInt("2147483648");
+            AssertJUnit.fail("should not parse");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    public void shouldParseLocaleNumbersConcurrently() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<BigDecimal>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final int n = i;
+                futures.add(executor.submit(() -> LocaleNumberParser.forLocale(Locale.GERMANY).parseBigDecimal("1.234," + n)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(), equalTo(new BigDecimal("1234." + i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(LocaleNumberParser.forLocale(Locale.US).parseNumber("1,234.5").doubleValue(), equalTo(1234.5));
+        assertThat(LocaleNumberParser.forLocale(Locale.US).parseBigDecimal("x"), equalTo(null));
+    }
+
+    public void shouldGetBigDecimalValues() {
+        browser = xpbf.browse("<root><p>1,5</p><p> </p><p>2,25</p><p>x</p></root>");
+        assertThat(browser.getBigDecimalValues(Locale.GERMANY, "/root/p"), equalTo(new BigDecimal[] { new BigDecimal("1.5"), null, new BigDecimal("2.25"), null }));
+    }
+
+    public void shouldGetFirstMatchWithoutCollectingAllMatches() {
+        browser = xpbf.browse("<root><a><b>1</b></a><a><b>2</b><b>3</b></a><c><b>4</b></c></root>");
+        for (String expr : new String[] { "/root/a/b", "//b", "/root/*/b[2]", "/root/c/b/text()", "/root/x" }) {
+            NodeList all = browser.getNodeList(expr);
+            Optional<Node> first = browser.getFirstNode(expr);
+            if (all.getLength() == 0) {
+                assertThat(expr, first.isPresent(), equalTo(false));
+            } else {
+                assertThat(expr, first.get() == all.item(0));
+            }
+        }
+        assertThat(browser.browseFirst("//b").getString().get(), equalTo("1"));
+    }
+
+    public void shouldIterateMatchesLazily() {
+        browser = xpbf.browse("<root><a id=\"1\"><b>1</b></a><a/><x><b>x</b></x><a id=\"2\"><b>2</b><b>3</b><c/></a><a id=\"3\"><b>4</b></a></root>");
+        for (String expr : new String[] { "/root/a/b", "root/a/b", "/root/*/b", "/root/a/@id", "/root/a", "/root/*", "/root/a/x", "/", "/root/a/b/text()", "//b" }) {
+            List<Node> expected = new ArrayList<>();
+            NodeList nodeList = browser.getNodeList(expr);
+            for (int i = 0; i < nodeList.getLength(); i++) {
+                expected.add(nodeList.item(i));
+            }
+            List<Node> lazy = browser.streamMatching(expr).map(XPathBrowser::node).collect(Collectors.toList());
+            assertThat(expr, lazy, equalTo(expected));
+            if (expected.size() > 1) {
+                assertThat(expr, browser.streamMatching(expr).limit(2).map(XPathBrowser::node).collect(Collectors.toList()), equalTo(expected.subList(0, 2)));
+            }
+        }
+        // relative to a sub node
+        XPathBrowser a = browser.browseFirst("/root/a[@id='2']");
+        assertThat(a.streamMatching("b").map(b -> b.getString().get()).collect(Collectors.toList()), equalTo(Arrays.asList("2", "3")));
+    }
+
+    public void shouldAllowRemovingMatchesWhileIterating() {
+        for (String expr : new String[] { "/root/item", "//item" }) {
+            browser = xpbf.browse("<root><item>1</item><item>2</item><item>3</item></root>");
+            int count = 0;
+            for (XPathBrowser item : browser.browseMatching(expr)) {
+                item.node().getParentNode().removeChild(item.node());
+                count++;
+            }
+            assertThat(expr, count, equalTo(3));
+            assertThat(expr, browser.getNodeList("/root/item").getLength(), equalTo(0));
+
+            browser = xpbf.browse("<root><item>1</item><item>2</item><item>3</item></root>");
+            Node root = browser.getFirstNode("/root").get();
+            browser.streamMatching(expr).forEach(item -> root.removeChild(item.node()));
+            assertThat(expr, browser.getNodeList("/root/item").getLength(), equalTo(0));
+        }
+    }
+
+    @Test(expectedExceptions = RethrownException.class)
+    public void shouldEvaluateWhenBrowseMatchingIsCalled() {
+        browser.browseMatching("/root/[");
+    }
+
+    public void shouldAccessAttributesWithoutXpath() {
+        browser = xpbf.browse("<root xmlns:x=\"urn:x\"><e b=\" 2 \" a=\"1\" x:c=\"3\" d=\" \"/></root>").browseFirst("/root/e");
+        for (String key : new String[] { "a", "b", "c", "d", "x:c", "missing" }) {
+            assertThat(key, browser.getNodeAttribute(key), equalTo(browser.getString("@" + key)));
+        }
+        Map<String, String> view = browser.attributes();
+        assertThat(view.size(), equalTo(4));
+        assertThat(view.get("b"), equalTo("2"));
+        assertThat(view.get("missing"), equalTo(null));
+        assertThat(new TreeMap<>(view), equalTo(browser.nodeAttributes()));
+        assertThat(browser.nodeAttributes().get("d"), equalTo(""));
+
+        Map<String, String> visited = new TreeMap<>();
+        browser.forEachAttribute(visited::put);
+        assertThat(visited, equalTo(browser.nodeAttributes()));
+        assertThat(browser.browseFirst("/root").attributes().containsKey("xmlns:x"), equalTo(true));
+        assertThat(xpbf.browse("<root/>").attributes().isEmpty(), equalTo(true));
+    }
 }
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import io.inbot.xmltools.exceptions.RethrownException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+@Test
+public class XPathExpressionCacheTest {
+
+    private final XPathExpressionCache cache = new XPathExpressionCache(100, 10, 4);
+
+    public void shouldReturnSameHandleForSameExpression() {
+        assertThat(cache.get("/root/string"), sameInstance(cache.get("/root/string")));
+    }
+
+    @Test(expectedExceptions = RethrownException.class)
+    public void shouldRejectInvalidExpression() {
+        cache.get("/root/[");
+    }
+
+    public void shouldEvaluateConcurrently() throws InterruptedException, ExecutionException {
+        Document document = new PooledXmlParser(4, 10).parseXml("<root><a>1</a><b>2</b></root>");
+        CompiledXPath a = cache.get("/root/a");
+        CompiledXPath b = cache.get("/root/b");
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                CompiledXPath expression = i % 2 == 0 ? a : b;
+                // DOM is not thread safe, so synchronize on the document but not on the expression
+                futures.add(executor.submit(() -> {
+                    synchronized (document) {
+                        return (String) expression.evaluate(document, XPathConstants.STRING);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(), equalTo(i % 2 == 0 ? "1" : "2"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final String FAST_PATH_XML = "<root xmlns:x='urn:x' a='1' x:b='2'>"
+            + "<string>foo</string><double> 0.42 </double><bad>1e3</bad><empty/>"
+            + "<list><item id='1'>1</item><item id='2'>t<![CDATA[w]]>o<sub>!</sub></item><x:item id='3'>3</x:item></list>"
+            + "</root>";
+
+    @DataProvider
+    public Object[][] fastPathExpressions() {
+        String[] expressions = { ".", "/", "/root", "root", "/root/string", "string", "./string", "double", "bad", "empty", "idontexist",
+                "list/item", "list/item/@id", "list/*", "list/*/@id", "*", "@a", "@b", "@xmlns:x", "list/item/text()", "list/item[2]",
+                "/root/list/item/@id", "@*" };
+        Object[][] result = new Object[expressions.length][];
+        for (int i = 0; i < expressions.length; i++) {
+            result[i] = new Object[] { expressions[i] };
+        }
+        return result;
+    }
+
+    @Test(dataProvider = "fastPathExpressions")
+    public void shouldEvaluateSimplePathsLikeXPath(String expression) {
+        Document document = new PooledXmlParser(1, 10).parseXml(FAST_PATH_XML);
+        CompiledXPath compiled = cache.get(expression);
+        CompiledXPath reference = compiled instanceof SimpleXPathExpression ? ((SimpleXPathExpression) compiled).fallback() : compiled;
+        Node[] contexts = { document, document.getDocumentElement(), document.getDocumentElement().getFirstChild(),
+                document.getDocumentElement().getAttributeNode("a"),
+                document.getElementsByTagName("item").item(1).getFirstChild() };
+        for (Node context : contexts) {
+            for (QName type : new QName[] { XPathConstants.STRING, XPathConstants.BOOLEAN, XPathConstants.NODE }) {
+                assertThat(expression + " " + type, compiled.evaluate(context, type), equalTo(reference.evaluate(context, type)));
+            }
+            Double number = (Double) compiled.evaluate(context, XPathConstants.NUMBER);
+            Double referenceNumber = (Double) reference.evaluate(context, XPathConstants.NUMBER);
+            assertThat(expression, number.isNaN() ? "NaN" : number.toString(), equalTo(referenceNumber.isNaN() ? "NaN" : referenceNumber.toString()));
+            NodeList nodes = (NodeList) compiled.evaluate(context, XPathConstants.NODESET);
+            NodeList referenceNodes = (NodeList) reference.evaluate(context, XPathConstants.NODESET);
+            assertThat(expression, nodes.getLength(), equalTo(referenceNodes.getLength()));
+            for (int i = 0; i < nodes.getLength(); i++) {
+                assertThat(expression, nodes.item(i), sameInstance(referenceNodes.item(i)));
+            }
+        }
+    }
+
+    public void shouldMatchPrefixedAttributesLikeXPath() throws Exception {
+        String xml = "<r xmlns:p='urn:p' xmlns:z='urn:z'><b p:id='3' id='4'/><b z:id='1' id='2' p:id='5'/><b/></r>";
+        for (boolean namespaceAware : new boolean[] { false, true }) {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(namespaceAware);
+            Document document = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+            for (String expression : new String[] { "/r/b/@id", "b/@id", "@id" }) {
+                SimpleXPathExpression compiled = (SimpleXPathExpression) cache.get(expression);
+                Node context = expression.equals("@id") ? document.getElementsByTagName("b").item(1) : document.getDocumentElement();
+                NodeList referenceNodes = (NodeList) compiled.fallback().evaluate(context, XPathConstants.NODESET);
+                NodeList nodes = (NodeList) compiled.evaluate(context, XPathConstants.NODESET);
+                List<Node> lazy = new ArrayList<>();
+                compiled.iterate(context).forEachRemaining(lazy::add);
+                assertThat(expression, nodes.getLength(), equalTo(referenceNodes.getLength()));
+                assertThat(expression, lazy.size(), equalTo(referenceNodes.getLength()));
+                for (int i = 0; i < nodes.getLength(); i++) {
+                    assertThat(expression, nodes.item(i), sameInstance(referenceNodes.item(i)));
+                    assertThat(expression, lazy.get(i), sameInstance(referenceNodes.item(i)));
+                }
+                assertThat(expression, compiled.evaluate(context, XPathConstants.STRING),
+                        equalTo(compiled.fallback().evaluate(context, XPathConstants.STRING)));
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void shouldCompileANewInstanceForGetExpression() throws Exception {
+        assertThat(cache.getExpression("/root/a") == cache.getExpression("/root/a"), equalTo(false));
+    }
+
+    public void shouldUseFastPathForSimpleExpressions() {
+        assertThat(cache.get("./name"), instanceOf(SimpleXPathExpression.class));
+        assertThat(cache.get("@id"), instanceOf(SimpleXPathExpression.class));
+        assertThat(cache.get("count(item)"), instanceOf(PooledXPathExpression.class));
+        assertThat(cache.get("//item"), instanceOf(PooledXPathExpression.class));
+    }
+
+    public void shouldConvertNumbersLikeXPath() {
+        assertThat(SimpleXPathExpression.toNumber(" -1.5 "), equalTo(-1.5));
+        assertThat(SimpleXPathExpression.toNumber(".5"), equalTo(0.5));
+        assertThat(Double.isNaN(SimpleXPathExpression.toNumber("1e3")), equalTo(true));
+        assertThat(Double.isNaN(SimpleXPathExpression.toNumber("+1")), equalTo(true));
+        assertThat(Double.isNaN(SimpleXPathExpression.toNumber("")), equalTo(true));
+    }
+}
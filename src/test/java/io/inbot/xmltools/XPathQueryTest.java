@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.testng.annotations.Test;
+
+@Test
+public class XPathQueryTest {
+
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    private final XPathBrowser browser = xpbf.browse(this.getClass().getResourceAsStream("/test_feed.xml"), StandardCharsets.UTF_8);
+
+    public void shouldProduceSameRowsAsStreamMatching() {
+        String[] fields = { "@id", "name", "price", "tags/tag", "count(tags/tag)", "idontexist" };
+        XPathQuery query = browser.query("/feed/item");
+        for (String field : fields) {
+            query = query.field(field);
+        }
+        List<String[]> expected = browser.streamMatching("/feed/item")
+            .map(item -> Arrays.stream(fields).map(field -> item.getString(field).orElse(null)).toArray(String[]::new))
+            .collect(Collectors.toList());
+        List<String[]> rows = query.rows();
+        assertThat(rows.size(), equalTo(3));
+        for (int i = 0; i < rows.size(); i++) {
+            assertThat(rows.get(i), equalTo(expected.get(i)));
+        }
+        assertThat(query.stream().map(row -> row[0]).collect(Collectors.toList()), equalTo(Arrays.asList("1", "2", "3")));
+        assertThat(query.fields(), equalTo(Arrays.asList(fields)));
+    }
+
+    public void shouldQueryRelativeToCurrentNode() {
+        XPathBrowser item = browser.browseFirst("/feed/item[1]");
+        List<String[]> rows = item.query("tags/tag").field(".").rows();
+        assertThat(rows.stream().map(row -> row[0]).collect(Collectors.toList()), equalTo(Arrays.asList("a", "b")));
+    }
+
+    public void shouldReturnNoRowsWithoutMatches() {
+        assertThat(browser.query("/feed/idontexist").field("name").rows().size(), equalTo(0));
+    }
+}
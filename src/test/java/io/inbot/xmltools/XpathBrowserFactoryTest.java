@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2012-2017, Jilles van Gurp
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.inbot.xmltools;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.testng.annotations.Test;
+
+@Test
+public class XpathBrowserFactoryTest {
+
+    private final XpathBrowserFactory xpbf = new XpathBrowserFactory(new PooledXmlParser(20, 20), new XPathExpressionCache(20, 10000, 1000, 20));
+
+    public void shouldBrowseRecordsLikeStreamMatching() {
+        List<String> expected = xpbf.browse(feed(), StandardCharsets.UTF_8).streamMatching("/feed/item")
+            .map(item -> item.getString("@id").get() + ":" + item.getString("name").get() + ":" + item.getStringValues("tags/tag").length)
+            .collect(Collectors.toList());
+        try (Stream<XPathBrowser> records = xpbf.browseRecords(feed(), StandardCharsets.UTF_8, "/feed/item")) {
+            List<String> actual = records
+                .map(item -> item.getString("@id").get() + ":" + item.getString("name").get() + ":" + item.getStringValues("tags/tag").length)
+                .collect(Collectors.toList());
+            assertThat(actual, equalTo(expected));
+        }
+    }
+
+    public void shouldIncludeNestedMatchesInOuterRecord() {
+        try (Stream<XPathBrowser> records = xpbf.browseRecords(feed(), StandardCharsets.UTF_8, "//item")) {
+            List<XPathBrowser> list = records.collect(Collectors.toList());
+            assertThat(list.size(), equalTo(3));
+            assertThat(list.get(2).getString("item/@id").get(), equalTo("3.1"));
+        }
+    }
+
+    public void shouldSupportPredicatesInRecordPath() {
+        try (Stream<XPathBrowser> records = xpbf.browseRecords(feed(), StandardCharsets.UTF_8, "/feed/item[@type='book']")) {
+            assertThat(records.map(item -> item.getString("name").get()).collect(Collectors.toList()).toString(), equalTo("[First, Third]"));
+        }
+    }
+
+    public void shouldBrowseRecordsLazily() {
+        StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < 10; i++) {
+            xml.append("<item><id>").append(i).append("</id></item>");
+        }
+        // broken after the records we need; a lazy stream never gets there
+        xml.append("<broken>");
+        try (Stream<XPathBrowser> records = xpbf.browseRecords(new StringReader(xml.toString()), "/feed/item")) {
+            assertThat(records.limit(2).map(item -> item.getLong("id").get()).collect(Collectors.toList()).toString(), equalTo("[0, 1]"));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectAttributeRecordPath() {
+        xpbf.browseRecords(feed(), StandardCharsets.UTF_8, "/feed/item/@id");
+    }
+
+    public void shouldBrowseMappedFile() {
+        XPathBrowser browser = xpbf.browse(Paths.get("src/test/resources/test_feed.xml"));
+        assertThat(browser.getString("/feed/title").get(), equalTo("Test feed"));
+        try (Stream<XPathBrowser> items = xpbf.browseRecords(Paths.get("src/test/resources/test_feed.xml"), "/feed/item")) {
+            assertThat(items.map(item -> item.getString("@id").get()).collect(Collectors.toList()), equalTo(Arrays.asList("1", "2", "3")));
+        }
+    }
+
+    private InputStream feed() {
+        return this.getClass().getResourceAsStream("/test_feed.xml");
+    }
+}